@@ -0,0 +1,204 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.benchmark;
+
+import com.google.gson.Gson;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import nu.pattern.OpenCV;
+import uk.ac.horizon.artcodes.detect.DetectionPipeline;
+import uk.ac.horizon.artcodes.detect.ImageBuffers;
+import uk.ac.horizon.artcodes.detect.handler.MarkerDetectionHandler;
+import uk.ac.horizon.artcodes.detect.marker.Marker;
+import uk.ac.horizon.artcodes.detect.marker.MarkerAreaOrderDetector;
+import uk.ac.horizon.artcodes.detect.marker.MarkerDetector;
+import uk.ac.horizon.artcodes.detect.marker.MarkerEmbeddedChecksumDetector;
+import uk.ac.horizon.artcodes.model.Experience;
+import uk.ac.horizon.artcodes.process.Blur;
+import uk.ac.horizon.artcodes.process.ImageProcessor;
+import uk.ac.horizon.artcodes.process.TileThresholder;
+
+/**
+ * Throughput of each stage of the detection pipeline on a single frame. Run with the gc profiler
+ * to see how much each stage allocates per frame.
+ * <p>
+ * OpenCV modifies the image while finding contours, so every detect benchmark starts by copying
+ * the thresholded frame back into the buffers. The copy benchmark measures that cost alone, and
+ * should be subtracted when comparing stages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DetectionBenchmark
+{
+	@Param({"house.jpg", "blobs.jpg", "koi.jpg"})
+	public String frame;
+
+	@Param("test.json")
+	public String experience;
+
+	private final ImageBuffers buffers = new ImageBuffers();
+	private byte[] greyscale;
+	private byte[] thresholded;
+	private int markerCount;
+
+	private ImageProcessor thresholder;
+	private ImageProcessor boxThresholder;
+	private ImageProcessor unblurredThresholder;
+	private ImageProcessor detector;
+	private ImageProcessor embeddedDetector;
+	private ImageProcessor orderedDetector;
+	private DetectionPipeline pipeline;
+	private Mat image;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		OpenCV.loadShared();
+
+		final Experience experience = loadExperience(this.experience);
+		final MarkerDetectionHandler handler = new MarkerDetectionHandler()
+		{
+			@Override
+			public void onMarkersDetected(Collection<Marker> markers, ArrayList<MatOfPoint> contours, int[] hierarchy, Size sourceImageSize)
+			{
+				markerCount = markers.size();
+			}
+		};
+
+		thresholder = new TileThresholder();
+		boxThresholder = new TileThresholder(Blur.box);
+		unblurredThresholder = new TileThresholder(Blur.none);
+		detector = new MarkerDetector(experience, handler);
+		embeddedDetector = new MarkerEmbeddedChecksumDetector(experience, handler);
+		orderedDetector = new MarkerAreaOrderDetector(experience, handler);
+		pipeline = new DetectionPipeline(experience, null);
+
+		image = Frames.load(frame);
+		greyscale = new byte[(int) image.total()];
+		image.get(0, 0, greyscale);
+
+		buffers.createBuffer(image.cols(), image.rows(), 8);
+		buffers.setROI(null);
+
+		buffers.setImage(greyscale);
+		thresholder.process(buffers);
+		thresholded = new byte[greyscale.length];
+		buffers.getImage().get(0, 0, thresholded);
+	}
+
+	@Benchmark
+	public Mat copy()
+	{
+		buffers.setImage(thresholded);
+		return buffers.getImage();
+	}
+
+	@Benchmark
+	public Mat threshold()
+	{
+		return threshold(thresholder);
+	}
+
+	@Benchmark
+	public Mat thresholdBox()
+	{
+		return threshold(boxThresholder);
+	}
+
+	@Benchmark
+	public Mat thresholdNoBlur()
+	{
+		return threshold(unblurredThresholder);
+	}
+
+	@Benchmark
+	public int detect()
+	{
+		return detect(detector);
+	}
+
+	@Benchmark
+	public int detectEmbedded()
+	{
+		return detect(embeddedDetector);
+	}
+
+	@Benchmark
+	public int detectOrdered()
+	{
+		return detect(orderedDetector);
+	}
+
+	/**
+	 * The whole experience pipeline, as run on each camera frame.
+	 */
+	@Benchmark
+	public List<Marker> pipeline()
+	{
+		return pipeline.detect(image);
+	}
+
+	private Mat threshold(ImageProcessor processor)
+	{
+		buffers.setImage(greyscale);
+		processor.process(buffers);
+		return buffers.getImage();
+	}
+
+	private int detect(ImageProcessor processor)
+	{
+		buffers.setImage(thresholded);
+		processor.process(buffers);
+		return markerCount;
+	}
+
+	private static Experience loadExperience(String name) throws IOException
+	{
+		final Reader reader = new InputStreamReader(DetectionBenchmark.class.getClassLoader().getResourceAsStream(name), "UTF-8");
+		try
+		{
+			return new Gson().fromJson(reader, Experience.class);
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.benchmark;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Loads greyscale frames for benchmarking. Frames are read from the directory given by the
+ * artcodes.frames system property if set, otherwise from the classpath.
+ * <p>
+ * As well as any image OpenCV can decode, raw camera preview dumps named name_WIDTHxHEIGHT.nv21
+ * are supported. Only the Y plane is used, as that is what the detector sees.
+ */
+final class Frames
+{
+	private static final Pattern NV21_NAME = Pattern.compile(".*_(\\d+)x(\\d+)\\.nv21");
+
+	private Frames()
+	{
+	}
+
+	static Mat load(String name) throws IOException
+	{
+		final byte[] data = read(name);
+		final Matcher matcher = NV21_NAME.matcher(name);
+		if (matcher.matches())
+		{
+			final int width = Integer.parseInt(matcher.group(1));
+			final int height = Integer.parseInt(matcher.group(2));
+			if (data.length < width * height)
+			{
+				throw new IOException(name + " is too small for a " + width + "x" + height + " frame");
+			}
+			final Mat frame = new Mat(height, width, CvType.CV_8UC1);
+			frame.put(0, 0, Arrays.copyOf(data, width * height));
+			return frame;
+		}
+
+		final Mat frame = Imgcodecs.imdecode(new MatOfByte(data), Imgcodecs.IMREAD_GRAYSCALE);
+		if (frame.empty())
+		{
+			throw new IOException("Could not decode " + name);
+		}
+		return frame;
+	}
+
+	private static byte[] read(String name) throws IOException
+	{
+		final String directory = System.getProperty("artcodes.frames");
+		final InputStream input;
+		if (directory != null)
+		{
+			input = new FileInputStream(new File(directory, name));
+		}
+		else
+		{
+			input = Frames.class.getClassLoader().getResourceAsStream(name);
+			if (input == null)
+			{
+				throw new IOException(name + " not found");
+			}
+		}
+
+		try
+		{
+			final ByteArrayOutputStream output = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) != -1)
+			{
+				output.write(buffer, 0, read);
+			}
+			return output.toByteArray();
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.benchmark;
+
+import com.google.gson.Gson;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import nu.pattern.OpenCV;
+import uk.ac.horizon.artcodes.detect.DetectionPipeline;
+import uk.ac.horizon.artcodes.detect.DetectorStats;
+import uk.ac.horizon.artcodes.detect.frame.FileFrameSource;
+import uk.ac.horizon.artcodes.detect.frame.FrameReplayer;
+import uk.ac.horizon.artcodes.detect.handler.MarkerDetectionHandler;
+import uk.ac.horizon.artcodes.detect.marker.Marker;
+import uk.ac.horizon.artcodes.model.Experience;
+
+/**
+ * Replays a recorded session through an experience's pipeline, and reports the processing time
+ * per frame and stage, and the number of frames until the first marker was detected.
+ * <p>
+ * Usage: Replay experience.json frameDirectory [framesPerSecond]
+ */
+public class Replay
+{
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 2)
+		{
+			System.err.println("Usage: Replay experience.json frameDirectory [framesPerSecond]");
+			System.exit(1);
+		}
+
+		OpenCV.loadShared();
+
+		final Experience experience;
+		final Reader reader = new FileReader(args[0]);
+		try
+		{
+			experience = new Gson().fromJson(reader, Experience.class);
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		final FileFrameSource source = new FileFrameSource(new File(args[1]));
+		final int framesPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		final int[] firstDetection = {-1};
+		final FrameReplayer[] replayer = new FrameReplayer[1];
+		final DetectionPipeline pipeline = new DetectionPipeline(experience, new MarkerDetectionHandler()
+		{
+			@Override
+			public void onMarkersDetected(Collection<Marker> markers, ArrayList<MatOfPoint> contours, int[] hierarchy, Size sourceImageSize)
+			{
+				if (firstDetection[0] < 0 && !markers.isEmpty())
+				{
+					firstDetection[0] = replayer[0].getFrameCount();
+				}
+			}
+		});
+
+		replayer[0] = new FrameReplayer(source, pipeline, framesPerSecond);
+		replayer[0].run();
+		source.close();
+
+		if (replayer[0].getError() != null)
+		{
+			throw replayer[0].getError();
+		}
+
+		System.out.println("Frames: " + replayer[0].getFrameCount() + " (" + source.getWidth() + "x" + source.getHeight() + ")");
+		System.out.println("Mean frame time: " + TimeUnit.NANOSECONDS.toMicros(replayer[0].getMeanProcessingTime()) + "us");
+		System.out.println("Max frame time: " + TimeUnit.NANOSECONDS.toMicros(replayer[0].getMaxProcessingTime()) + "us");
+		System.out.println("Frames to first detection: " + (firstDetection[0] < 0 ? "none" : firstDetection[0] + 1));
+
+		final DetectorStats stats = pipeline.getStats();
+		for (DetectorStats.Timer timer : stats.getStageTimers())
+		{
+			System.out.println(timer);
+		}
+		System.out.println("Contours scanned: " + stats.getContoursScanned());
+		System.out.println("Candidates rejected: " + stats.getCandidatesRejected());
+		System.out.println("Markers found: " + stats.getMarkersFound());
+	}
+}
@@ -0,0 +1,357 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.cli;
+
+import com.google.common.base.Joiner;
+import com.google.gson.GsonBuilder;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import nu.pattern.OpenCV;
+import uk.ac.horizon.artcodes.ExperienceParser;
+import uk.ac.horizon.artcodes.detect.DetectionPipeline;
+import uk.ac.horizon.artcodes.detect.DetectorStats;
+import uk.ac.horizon.artcodes.detect.marker.Marker;
+import uk.ac.horizon.artcodes.model.Experience;
+
+/**
+ * Scans every image in a directory with an experience's pipeline, using all cores, and writes a
+ * report of the codes detected in each image, how long detection took, and why nothing was
+ * detected when it wasn't.
+ */
+public class BatchScanner
+{
+	private static final String USAGE = "Usage: artcodes-scan [options] <experience.json> <image directory>\n"
+			+ "  --format csv|json  Report format (default csv)\n"
+			+ "  --threads N        Number of images to scan at once (default: number of processors)\n"
+			+ "  --output FILE      Write the report to FILE instead of standard output";
+	private static final Set<String> IMAGE_EXTENSIONS = new LinkedHashSet<>(Arrays.asList("jpg", "jpeg", "png", "bmp", "tif", "tiff", "webp"));
+
+	private final Experience experience;
+
+	public BatchScanner(Experience experience)
+	{
+		this.experience = experience;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		String format = "csv";
+		String output = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		final List<String> files = new ArrayList<>();
+		try
+		{
+			for (int index = 0; index < args.length; index++)
+			{
+				switch (args[index])
+				{
+					case "--format":
+						format = args[++index];
+						break;
+					case "--threads":
+						threads = Integer.parseInt(args[++index]);
+						break;
+					case "--output":
+						output = args[++index];
+						break;
+					default:
+						files.add(args[index]);
+				}
+			}
+		}
+		catch (ArrayIndexOutOfBoundsException | NumberFormatException e)
+		{
+			files.clear();
+		}
+
+		if (files.size() != 2 || threads < 1 || !(format.equals("csv") || format.equals("json")))
+		{
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		OpenCV.loadShared();
+
+		final Experience experience;
+		final Reader reader = new FileReader(files.get(0));
+		try
+		{
+			experience = ExperienceParser.createGson(true).fromJson(reader, Experience.class);
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		final File directory = new File(files.get(1));
+		final List<File> images = new ArrayList<>();
+		findImages(directory, images);
+		Collections.sort(images);
+
+		final long start = System.nanoTime();
+		final List<ScanResult> results = new BatchScanner(experience).scan(directory, images, threads);
+		final double seconds = (System.nanoTime() - start) / 1e9;
+
+		final Writer writer = output == null
+				? new OutputStreamWriter(System.out, "UTF-8")
+				: new OutputStreamWriter(new FileOutputStream(output), "UTF-8");
+		try
+		{
+			if (format.equals("json"))
+			{
+				new GsonBuilder().setPrettyPrinting().create().toJson(results, writer);
+			}
+			else
+			{
+				writeCSV(results, new PrintWriter(writer));
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+
+		int detected = 0;
+		int errors = 0;
+		for (ScanResult result : results)
+		{
+			if (result.getStatus() == ScanResult.Status.detected)
+			{
+				detected++;
+			}
+			else if (result.getStatus() == ScanResult.Status.error)
+			{
+				errors++;
+			}
+		}
+		System.err.println(String.format(Locale.US, "%d images, %d detected, %d errors in %.1fs (%.1f images/s)",
+				results.size(), detected, errors, seconds, results.size() / seconds));
+	}
+
+	private static void findImages(File directory, List<File> images)
+	{
+		final File[] files = directory.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+		for (File file : files)
+		{
+			if (file.isDirectory())
+			{
+				findImages(file, images);
+			}
+			else
+			{
+				final String name = file.getName().toLowerCase(Locale.US);
+				final int dot = name.lastIndexOf('.');
+				if (dot >= 0 && IMAGE_EXTENSIONS.contains(name.substring(dot + 1)))
+				{
+					images.add(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Scan the images in parallel. Each thread has its own pipeline, which is closed once every
+	 * image has been scanned.
+	 *
+	 * @return A result for each image, in the same order.
+	 */
+	public List<ScanResult> scan(final File directory, List<File> images, int threads) throws InterruptedException
+	{
+		final List<DetectionPipeline> created = Collections.synchronizedList(new ArrayList<DetectionPipeline>());
+		final ThreadLocal<DetectionPipeline> pipelines = new ThreadLocal<DetectionPipeline>()
+		{
+			@Override
+			protected DetectionPipeline initialValue()
+			{
+				final DetectionPipeline pipeline = new DetectionPipeline(experience, null);
+				created.add(pipeline);
+				return pipeline;
+			}
+		};
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			final List<Future<ScanResult>> futures = new ArrayList<>();
+			for (final File image : images)
+			{
+				futures.add(executor.submit(new Callable<ScanResult>()
+				{
+					@Override
+					public ScanResult call()
+					{
+						return scan(directory.toURI().relativize(image.toURI()).getPath(), image, pipelines.get());
+					}
+				}));
+			}
+
+			final List<ScanResult> results = new ArrayList<>();
+			for (int index = 0; index < futures.size(); index++)
+			{
+				try
+				{
+					results.add(futures.get(index).get());
+				}
+				catch (ExecutionException e)
+				{
+					final ScanResult result = new ScanResult(images.get(index).getPath());
+					result.setStatus(ScanResult.Status.error);
+					result.setReason(String.valueOf(e.getCause()));
+					results.add(result);
+				}
+			}
+			return results;
+		}
+		finally
+		{
+			// Wait for the threads to stop before closing the pipelines they use
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+			synchronized (created)
+			{
+				for (DetectionPipeline pipeline : created)
+				{
+					pipeline.close();
+				}
+				created.clear();
+			}
+		}
+	}
+
+	/**
+	 * Scan a single image on the current thread. The pipeline is reset first, so the result
+	 * doesn't depend on the images it scanned before.
+	 */
+	public ScanResult scan(String name, File file, DetectionPipeline pipeline)
+	{
+		final ScanResult result = new ScanResult(name);
+		final Mat image = Imgcodecs.imread(file.getAbsolutePath(), Imgcodecs.IMREAD_GRAYSCALE);
+		try
+		{
+			if (image.empty())
+			{
+				result.setStatus(ScanResult.Status.error);
+				result.setReason("Could not read image");
+				return result;
+			}
+
+			pipeline.reset();
+			final DetectorStats stats = pipeline.getStats();
+			final long contours = stats.getContoursScanned();
+			final long rejected = stats.getCandidatesRejected();
+			final long start = System.nanoTime();
+			final List<Marker> markers = pipeline.detect(image);
+			result.setTime((System.nanoTime() - start) / 1e6);
+			result.setContours(stats.getContoursScanned() - contours);
+			result.setRejected(stats.getCandidatesRejected() - rejected);
+
+			final Set<String> codes = new LinkedHashSet<>();
+			for (Marker marker : markers)
+			{
+				codes.add(marker.toString());
+			}
+			result.getCodes().addAll(codes);
+
+			if (!codes.isEmpty())
+			{
+				result.setStatus(ScanResult.Status.detected);
+			}
+			else if (result.getRejected() > 0)
+			{
+				result.setReason(result.getRejected() + " possible markers did not match a valid code");
+			}
+			else if (result.getContours() == 0)
+			{
+				result.setReason("No shapes found");
+			}
+			else
+			{
+				result.setReason("No shapes looked like markers");
+			}
+		}
+		catch (RuntimeException e)
+		{
+			result.setStatus(ScanResult.Status.error);
+			result.setReason(e.toString());
+		}
+		finally
+		{
+			image.release();
+		}
+		return result;
+	}
+
+	private static void writeCSV(List<ScanResult> results, PrintWriter writer)
+	{
+		writer.println("file,status,codes,time_ms,contours,rejected,reason");
+		for (ScanResult result : results)
+		{
+			writer.println(Joiner.on(',').useForNull("").join(
+					escape(result.getFile()),
+					result.getStatus(),
+					escape(Joiner.on(' ').join(result.getCodes())),
+					String.format(Locale.US, "%.2f", result.getTime()),
+					result.getContours(),
+					result.getRejected(),
+					escape(result.getReason())));
+		}
+		writer.flush();
+	}
+
+	private static String escape(String value)
+	{
+		if (value == null)
+		{
+			return null;
+		}
+		else if (value.contains(",") || value.contains("\"") || value.contains("\n"))
+		{
+			return '"' + value.replace("\"", "\"\"") + '"';
+		}
+		return value;
+	}
+}
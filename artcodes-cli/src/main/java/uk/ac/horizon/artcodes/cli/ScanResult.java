@@ -0,0 +1,113 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.cli;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of scanning one image, as written to the report.
+ */
+public class ScanResult
+{
+	public enum Status
+	{
+		detected, none, error
+	}
+
+	private final String file;
+	private Status status = Status.none;
+	private final List<String> codes = new ArrayList<>();
+	private double time;
+	private long contours;
+	private long rejected;
+	private String reason;
+
+	public ScanResult(String file)
+	{
+		this.file = file;
+	}
+
+	public String getFile()
+	{
+		return file;
+	}
+
+	public Status getStatus()
+	{
+		return status;
+	}
+
+	public void setStatus(Status status)
+	{
+		this.status = status;
+	}
+
+	public List<String> getCodes()
+	{
+		return codes;
+	}
+
+	/**
+	 * @return The time taken to detect markers, in milliseconds, not including loading the image.
+	 */
+	public double getTime()
+	{
+		return time;
+	}
+
+	public void setTime(double time)
+	{
+		this.time = time;
+	}
+
+	public long getContours()
+	{
+		return contours;
+	}
+
+	public void setContours(long contours)
+	{
+		this.contours = contours;
+	}
+
+	public long getRejected()
+	{
+		return rejected;
+	}
+
+	public void setRejected(long rejected)
+	{
+		this.rejected = rejected;
+	}
+
+	/**
+	 * @return Why no marker was detected, or null if one was.
+	 */
+	public String getReason()
+	{
+		return reason;
+	}
+
+	public void setReason(String reason)
+	{
+		this.reason = reason;
+	}
+}
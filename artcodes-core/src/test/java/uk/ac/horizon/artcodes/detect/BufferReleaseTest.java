@@ -0,0 +1,242 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import nu.pattern.OpenCV;
+import uk.ac.horizon.artcodes.TestUtils;
+import uk.ac.horizon.artcodes.detect.handler.MarkerDetectionHandler;
+import uk.ac.horizon.artcodes.model.Experience;
+import uk.ac.horizon.artcodes.process.ImageProcessor;
+import uk.ac.horizon.artcodes.process.ImageProcessorFactory;
+import uk.ac.horizon.artcodes.process.ProcessorConfig;
+
+/**
+ * Checks that every Mat a pipeline creates is released when it is closed: the image buffers, the
+ * contours and their hierarchy, and the Mats kept by its processors.
+ */
+public class BufferReleaseTest
+{
+	private static final Set<Mat> processorMats = Collections.newSetFromMap(new IdentityHashMap<Mat, Boolean>());
+	private static Mat image;
+
+	/**
+	 * Keeps a Mat between frames, as processors such as HueShifter do.
+	 */
+	private static class MatProcessor implements ImageProcessor
+	{
+		private Mat buffer;
+
+		@Override
+		public void process(ImageBuffers buffers)
+		{
+			if (buffer == null || buffer.rows() != buffers.getImage().rows() || buffer.cols() != buffers.getImage().cols())
+			{
+				if (buffer != null)
+				{
+					buffer.release();
+				}
+				buffer = new Mat(buffers.getImage().rows(), buffers.getImage().cols(), CvType.CV_8UC1);
+				processorMats.add(buffer);
+			}
+			buffers.getImage().copyTo(buffer);
+		}
+
+		@Override
+		public void getSettings(List<DetectorSetting> settings)
+		{
+		}
+
+		@Override
+		public void reset()
+		{
+		}
+
+		@Override
+		public void close()
+		{
+			if (buffer != null)
+			{
+				buffer.release();
+				buffer = null;
+			}
+		}
+	}
+
+	@BeforeClass
+	public static void loadOpenCV()
+	{
+		OpenCV.loadShared();
+		DetectionPipeline.register(new ImageProcessorFactory()
+		{
+			@Override
+			public String getName()
+			{
+				return "test:mats";
+			}
+
+			@Override
+			public ImageProcessor create(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config)
+			{
+				return new MatProcessor();
+			}
+		});
+
+		// A photo, so that there are contours to find
+		image = Imgcodecs.imread(BufferReleaseTest.class.getClassLoader().getResource("house.jpg").getFile(), Imgcodecs.IMREAD_GRAYSCALE);
+		Assert.assertFalse(image.empty());
+	}
+
+	private static Experience loadExperience() throws IOException
+	{
+		final Experience experience = TestUtils.loadExperience("test");
+		experience.getPipeline().add(0, "test:mats");
+		return experience;
+	}
+
+	private static Set<Mat> createSet()
+	{
+		return Collections.newSetFromMap(new IdentityHashMap<Mat, Boolean>());
+	}
+
+	private static int countLive(Set<Mat> mats)
+	{
+		int live = 0;
+		for (Mat mat : mats)
+		{
+			if (mat.dataAddr() != 0)
+			{
+				live++;
+			}
+		}
+		return live;
+	}
+
+	/**
+	 * Detect markers in the photo at the given size, and collect the Mats held by the buffers
+	 * afterwards.
+	 */
+	private static void detect(DetectionPipeline pipeline, int width, int height, Set<Mat> buffers, Set<Mat> contours)
+	{
+		final Mat frame = new Mat();
+		Imgproc.resize(image, frame, new Size(width, height));
+		pipeline.detect(frame);
+		frame.release();
+
+		final ImageBuffers imageBuffers = pipeline.getBuffers();
+		buffers.add(imageBuffers.getImage());
+		buffers.add(imageBuffers.getOverlay(false));
+		buffers.add(imageBuffers.getTemp());
+		buffers.add(imageBuffers.getHierarchy());
+		Assert.assertFalse(imageBuffers.getContours().isEmpty());
+		contours.addAll(imageBuffers.getContours());
+	}
+
+	@Test
+	public void testSameSize() throws IOException
+	{
+		processorMats.clear();
+		final DetectionPipeline pipeline = new DetectionPipeline(loadExperience(), null);
+		final Set<Mat> buffers = createSet();
+		final Set<Mat> contours = createSet();
+
+		for (int index = 0; index < 5; index++)
+		{
+			detect(pipeline, 640, 480, buffers, contours);
+		}
+		Assert.assertEquals(4, buffers.size());
+		Assert.assertEquals(4, countLive(buffers));
+		// Only the last frame's contours are left
+		Assert.assertEquals(pipeline.getBuffers().getContours().size(), countLive(contours));
+		Assert.assertEquals(1, processorMats.size());
+		Assert.assertEquals(1, countLive(processorMats));
+
+		pipeline.close();
+		Assert.assertEquals(0, countLive(buffers));
+		Assert.assertEquals(0, countLive(contours));
+		Assert.assertEquals(0, countLive(processorMats));
+	}
+
+	@Test
+	public void testSizeChange() throws IOException
+	{
+		processorMats.clear();
+		final DetectionPipeline pipeline = new DetectionPipeline(loadExperience(), null);
+		final Set<Mat> buffers = createSet();
+		final Set<Mat> contours = createSet();
+
+		detect(pipeline, 640, 480, buffers, contours);
+		detect(pipeline, 320, 240, buffers, contours);
+		detect(pipeline, 1280, 720, buffers, contours);
+		// Only the current frame's buffers are left
+		Assert.assertEquals(4, countLive(buffers));
+		Assert.assertEquals(pipeline.getBuffers().getContours().size(), countLive(contours));
+		Assert.assertEquals(3, processorMats.size());
+		Assert.assertEquals(1, countLive(processorMats));
+
+		pipeline.close();
+		Assert.assertEquals(0, countLive(buffers));
+		Assert.assertEquals(0, countLive(contours));
+		Assert.assertEquals(0, countLive(processorMats));
+	}
+
+	@Test
+	public void testCacheEviction() throws IOException
+	{
+		processorMats.clear();
+		final Experience experience = loadExperience();
+		final PipelineCache cache = new PipelineCache(1);
+		final Set<Mat> buffers = createSet();
+		final Set<Mat> contours = createSet();
+
+		final DetectionPipeline first = cache.acquire(experience, null);
+		final DetectionPipeline second = cache.acquire(experience, null);
+		detect(first, 640, 480, buffers, contours);
+		detect(second, 640, 480, buffers, contours);
+		Assert.assertEquals(8, countLive(buffers));
+		Assert.assertEquals(2, countLive(processorMats));
+
+		// Both are idle under the same key, so the first is replaced and closed
+		cache.release(first);
+		cache.release(second);
+		Assert.assertEquals(4, countLive(buffers));
+		Assert.assertEquals(second.getBuffers().getContours().size(), countLive(contours));
+		Assert.assertEquals(1, countLive(processorMats));
+
+		cache.clear();
+		Assert.assertEquals(0, countLive(buffers));
+		Assert.assertEquals(0, countLive(contours));
+		Assert.assertEquals(0, countLive(processorMats));
+	}
+}
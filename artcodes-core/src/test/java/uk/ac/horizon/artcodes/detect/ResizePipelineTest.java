@@ -0,0 +1,86 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.IOException;
+
+import nu.pattern.OpenCV;
+import uk.ac.horizon.artcodes.TestUtils;
+import uk.ac.horizon.artcodes.model.Experience;
+
+public class ResizePipelineTest
+{
+	@BeforeClass
+	public static void loadOpenCV()
+	{
+		OpenCV.loadShared();
+	}
+
+	private static Mat loadFrame(String name)
+	{
+		final Mat image = Imgcodecs.imread(ResizePipelineTest.class.getClassLoader().getResource(name).getFile(), Imgcodecs.IMREAD_GRAYSCALE);
+		Assert.assertFalse(image.empty());
+		final Mat frame = new Mat();
+		Imgproc.resize(image, frame, new Size(640, 480));
+		image.release();
+		return frame;
+	}
+
+	private static long countContours(DetectionPipeline pipeline, Mat frame)
+	{
+		pipeline.reset();
+		pipeline.detect(frame);
+		return pipeline.getStats().getContoursScanned();
+	}
+
+	@Test
+	public void testFramesAreScannedAlike() throws IOException
+	{
+		final Experience experience = TestUtils.loadExperience("test");
+		experience.getPipeline().set(0, "resize");
+		final Mat house = loadFrame("house.jpg");
+		final Mat koi = loadFrame("koi.jpg");
+
+		final DetectionPipeline reused = new DetectionPipeline(experience, null);
+		final long houseContours = countContours(reused, house);
+		final long koiContours = countContours(reused, koi);
+		Assert.assertEquals(540, reused.getBuffers().getImage().cols());
+
+		// Scanning a frame after another gives the same result as scanning it first
+		final DetectionPipeline fresh = new DetectionPipeline(experience, null);
+		Assert.assertEquals(koiContours, countContours(fresh, koi));
+		Assert.assertEquals(houseContours, countContours(fresh, house));
+		Assert.assertEquals(houseContours, countContours(reused, house));
+		Assert.assertNotEquals(houseContours, koiContours);
+
+		reused.close();
+		fresh.close();
+		house.release();
+		koi.release();
+	}
+}
@@ -19,9 +19,6 @@
 
 package uk.ac.horizon.artcodes;
 
-
-import android.content.Context;
-
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
@@ -37,7 +34,6 @@ import com.google.gson.stream.JsonWriter;
 import java.io.IOException;
 
 import uk.ac.horizon.artcodes.model.Experience;
-import uk.ac.horizon.artcodes.scanner.R;
 
 public class ExperienceParser
 {
@@ -167,12 +163,16 @@ public class ExperienceParser
 
 	private static Gson gson;
 
-	public static Gson createGson(Context context)
+	/**
+	 * @param loadOldExperiences Convert experiences in the old format, which used markers rather
+	 *                           than actions, when they are read.
+	 */
+	public static Gson createGson(boolean loadOldExperiences)
 	{
 		if (gson == null)
 		{
 			GsonBuilder builder = new GsonBuilder();
-			if (context == null || Feature.get(context, R.bool.feature_load_old_experiences).isEnabled())
+			if (loadOldExperiences)
 			{
 				builder.registerTypeAdapterFactory(new ExperienceTypeAdapterFactor());
 			}
@@ -39,8 +39,9 @@ import java.io.IOException;
 import java.util.List;
 
 import uk.ac.horizon.artcodes.detect.Detector;
-import uk.ac.horizon.artcodes.scanner.R;
 import uk.ac.horizon.artcodes.detect.DetectorSetting;
+import uk.ac.horizon.artcodes.detect.frame.FrameGovernor;
+import uk.ac.horizon.artcodes.detect.frame.FrameRecorder;
 
 @SuppressWarnings("deprecation")
 public class CameraView extends SurfaceView
@@ -50,6 +51,9 @@ public class CameraView extends SurfaceView
 	private Camera camera;
 	private int facing = Camera.CameraInfo.CAMERA_FACING_BACK;
 	private Detector detector;
+	private FrameRecorder recorder;
+	private final FrameGovernor governor = new FrameGovernor();
+	private final PowerMonitor powerMonitor = new PowerMonitor(governor);
 	private HandlerThread cameraThread;
 	private SurfaceHolder surface;
 	private int surfaceWidth;
@@ -89,11 +93,23 @@ public class CameraView extends SurfaceView
 		}
 	}
 
+	/**
+	 * Record every preview frame, so the session can be replayed later.
+	 *
+	 * @param recorder The recorder to use, or null to stop recording.
+	 */
+	public void setRecorder(FrameRecorder recorder)
+	{
+		this.recorder = recorder;
+	}
+
 	public void setDetector(Detector processor)
 	{
 		this.detector = processor;
 		if (detector != null)
 		{
+			governor.setStats(detector.getStats());
+			governor.reset();
 			if (camera == null)
 			{
 				createCamera();
@@ -106,7 +122,13 @@ public class CameraView extends SurfaceView
 					@Override
 					public void onPreviewFrame(final byte[] data, final Camera camera)
 					{
-						detector.setData(data);
+						record(data);
+						final long now = System.nanoTime();
+						if (governor.shouldProcess(now))
+						{
+							detector.setData(data);
+							governor.frameProcessed(detector.hasDetected(), now);
+						}
 						camera.addCallbackBuffer(data);
 					}
 				});
@@ -125,36 +147,55 @@ public class CameraView extends SurfaceView
 					}
 
 					@Override
-					public int getIcon()
+					public String getName()
 					{
-						switch (facing)
-						{
-							case Camera.CameraInfo.CAMERA_FACING_BACK:
-								return R.drawable.ic_camera_rear_24dp;
-							case Camera.CameraInfo.CAMERA_FACING_FRONT:
-								return R.drawable.ic_camera_front_24dp;
-						}
-						return 0;
+						return "camera";
 					}
 
 					@Override
-					public int getText()
+					public String getValue()
 					{
-						switch (facing)
-						{
-							case Camera.CameraInfo.CAMERA_FACING_BACK:
-								return R.string.camera_rear;
-							case Camera.CameraInfo.CAMERA_FACING_FRONT:
-								return R.string.camera_front;
-						}
-
-						return 0;
+						return facing == Camera.CameraInfo.CAMERA_FACING_FRONT ? "front" : "rear";
 					}
 				});
 			}
 		}
 	}
 
+	@Override
+	protected void onAttachedToWindow()
+	{
+		super.onAttachedToWindow();
+		powerMonitor.start(getContext());
+	}
+
+	@Override
+	protected void onDetachedFromWindow()
+	{
+		powerMonitor.stop(getContext());
+		super.onDetachedFromWindow();
+	}
+
+	private void record(byte[] data)
+	{
+		final FrameRecorder frameRecorder = recorder;
+		if (frameRecorder != null)
+		{
+			try
+			{
+				if (!frameRecorder.record(data, info.getImageWidth(), info.getImageHeight()))
+				{
+					recorder = null;
+				}
+			}
+			catch (IOException e)
+			{
+				Log.w("Scanner", "Recording stopped: " + e.getMessage(), e);
+				recorder = null;
+			}
+		}
+	}
+
 	private void init()
 	{
 		getHolder().addCallback(new SurfaceHolder.Callback()
@@ -0,0 +1,140 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.camera;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+import uk.ac.horizon.artcodes.detect.frame.FrameGovernor;
+
+/**
+ * Caps the {@link FrameGovernor} frame rate when the device is hot, the battery is low and not
+ * charging, or battery saver is on. The battery temperature is used as the device temperature, as
+ * the thermal status APIs need a newer SDK than the scanner is built against.
+ */
+public class PowerMonitor extends BroadcastReceiver
+{
+	private static final float WARM_CELSIUS = 40;
+	private static final float HOT_CELSIUS = 45;
+	private static final int LOW_BATTERY_PERCENT = 15;
+
+	private final FrameGovernor governor;
+	private float temperature = 0;
+	private int batteryPercent = 100;
+	private boolean charging = true;
+	private boolean registered = false;
+
+	public PowerMonitor(FrameGovernor governor)
+	{
+		this.governor = governor;
+	}
+
+	public void start(Context context)
+	{
+		if (!registered)
+		{
+			final IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+			{
+				filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+			}
+			// The battery broadcast is sticky, so the current state is returned straight away
+			final Intent battery = context.registerReceiver(this, filter);
+			registered = true;
+			if (battery != null)
+			{
+				onReceive(context, battery);
+			}
+		}
+	}
+
+	public void stop(Context context)
+	{
+		if (registered)
+		{
+			context.unregisterReceiver(this);
+			registered = false;
+		}
+		governor.setMaxFps(FrameGovernor.UNLIMITED);
+	}
+
+	@Override
+	public void onReceive(Context context, Intent intent)
+	{
+		if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction()))
+		{
+			temperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0) / 10f;
+			final int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+			final int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+			if (level >= 0 && scale > 0)
+			{
+				batteryPercent = level * 100 / scale;
+			}
+			charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+		}
+
+		final float maxFps = getMaxFps(isPowerSaveMode(context));
+		if (maxFps != governor.getMaxFps())
+		{
+			Log.i("Scanner", "Frame rate limit " + maxFps + " (" + temperature + "C, battery " + batteryPercent + "%" + (charging ? ", charging)" : ")"));
+			governor.setMaxFps(maxFps);
+		}
+	}
+
+	private float getMaxFps(boolean powerSaveMode)
+	{
+		float maxFps = FrameGovernor.UNLIMITED;
+		if (temperature >= HOT_CELSIUS)
+		{
+			maxFps = Math.min(maxFps, 2);
+		}
+		else if (temperature >= WARM_CELSIUS)
+		{
+			maxFps = Math.min(maxFps, 10);
+		}
+
+		if (!charging && batteryPercent <= LOW_BATTERY_PERCENT)
+		{
+			maxFps = Math.min(maxFps, 5);
+		}
+
+		if (powerSaveMode)
+		{
+			maxFps = Math.min(maxFps, 10);
+		}
+		return maxFps;
+	}
+
+	private static boolean isPowerSaveMode(Context context)
+	{
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+		{
+			final PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+			return powerManager != null && powerManager.isPowerSaveMode();
+		}
+		return false;
+	}
+}
@@ -20,78 +20,30 @@
 package uk.ac.horizon.artcodes.detect;
 
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.util.Log;
 
 import org.opencv.core.Rect;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import uk.ac.horizon.artcodes.detect.marker.MarkerAreaOrderDetector;
+import uk.ac.horizon.artcodes.Feature;
 import uk.ac.horizon.artcodes.detect.handler.MarkerDetectionHandler;
-import uk.ac.horizon.artcodes.detect.marker.MarkerDetector;
-import uk.ac.horizon.artcodes.detect.marker.MarkerEmbeddedChecksumDetector;
 import uk.ac.horizon.artcodes.model.Experience;
-import uk.ac.horizon.artcodes.process.ImageProcessor;
-import uk.ac.horizon.artcodes.process.ImageProcessorFactory;
-import uk.ac.horizon.artcodes.process.RedFilter;
-import uk.ac.horizon.artcodes.process.TileThresholder;
+import uk.ac.horizon.artcodes.scanner.R;
 
 public class ArtcodeDetector extends Detector
 {
-	private static final Map<String, ImageProcessorFactory> factoryRegistry = new HashMap<>();
-
-	static
-	{
-		register(new MarkerDetector.Factory());
-		register(new MarkerEmbeddedChecksumDetector.Factory());
-		register(new MarkerAreaOrderDetector.Factory());
-		register(new TileThresholder.Factory());
-		register(new RedFilter.Factory());
-		//register(new RGBFilter.BlueFactory());
-		//register(new RGBFilter.GreenFactory());
-	}
+	// Pipelines for recently scanned experiences, so returning to the scanner starts quickly
+	private static final PipelineCache pipelineCache = new PipelineCache(3);
 
 	public ArtcodeDetector(Context context, Experience experience, MarkerDetectionHandler handler)
 	{
-		for (String processorName : experience.getPipeline())
-		{
-			ImageProcessor processor = getProcessor(context, processorName, experience, handler);
-			if (processor != null)
-			{
-				pipeline.add(processor);
-			}
-		}
-
-		if (pipeline.isEmpty())
-		{
-			pipeline.add(new TileThresholder());
-			pipeline.add(new MarkerDetector(context, experience, handler));
-		}
-	}
-
-	private static void register(ImageProcessorFactory factory)
-	{
-		factoryRegistry.put(factory.getName(), factory);
+		super(pipelineCache.acquire(experience, handler));
+		buffers.setRotatedForDetection(Feature.get(context, R.bool.feature_combined_markers).isEnabled());
 	}
 
-	private static ImageProcessor getProcessor(Context context, String string, Experience experience, MarkerDetectionHandler handler)
+	@Override
+	protected void releasePipeline()
 	{
-		ImageProcessorFactory factory = factoryRegistry.get(string);
-		if (factory != null)
-		{
-			try
-			{
-				return factory.create(context, experience, handler);
-			}
-			catch (Exception e)
-			{
-				Log.w("detector", e.getMessage(), e);
-			}
-		}
-
-		return null;
+		pipelineCache.release(pipeline);
 	}
 
 	@Override
@@ -0,0 +1,204 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps ARGB bitmaps that are no longer shown, so that marker thumbnails and the overlay reuse
+ * them rather than allocating new ones. A bitmap must not be used or shown once it has been
+ * released to the pool.
+ * <p>
+ * From KitKat a bitmap can be reconfigured to any size that fits in its allocation, as
+ * BitmapFactory does with inBitmap, so bitmaps are bucketed by the power of two below their
+ * allocation size. A request is served from the bucket of the power of two above its size, or
+ * failing that by a big enough bitmap from the bucket below. Before KitKat bitmaps are bucketed by
+ * their exact size.
+ */
+public class BitmapPool
+{
+	private static final Bitmap.Config CONFIG = Bitmap.Config.ARGB_8888;
+	private static final int BYTES_PER_PIXEL = 4;
+	private static final BitmapPool shared = new BitmapPool(8 * 1024 * 1024);
+
+	private final Map<Long, Deque<Bitmap>> buckets = new HashMap<>();
+	private final boolean reconfigurable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+	private final long maxBytes;
+	private long pooledBytes = 0;
+	private int pooledCount = 0;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * @return The pool shared by the detector overlay and marker thumbnails.
+	 */
+	public static BitmapPool getShared()
+	{
+		return shared;
+	}
+
+	/**
+	 * @param maxBytes The most bitmap memory to keep. Bitmaps released beyond this are dropped.
+	 */
+	public BitmapPool(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Get an ARGB bitmap of the given size, reused from the pool if possible. Its contents are
+	 * undefined. Release it back to the pool once it is no longer used.
+	 */
+	public Bitmap acquire(int width, int height)
+	{
+		synchronized (this)
+		{
+			final long key = getRequestKey(width, height);
+			Bitmap bitmap = take(buckets.get(key), 0);
+			if (bitmap == null && reconfigurable)
+			{
+				// Bitmaps in the bucket below may still be big enough
+				bitmap = take(buckets.get(key - 1), (long) width * height * BYTES_PER_PIXEL);
+			}
+			if (bitmap != null)
+			{
+				pooledCount--;
+				pooledBytes -= getSize(bitmap);
+				hits++;
+				if (reconfigurable && (bitmap.getWidth() != width || bitmap.getHeight() != height))
+				{
+					bitmap.reconfigure(width, height, CONFIG);
+				}
+				return bitmap;
+			}
+			misses++;
+		}
+		return Bitmap.createBitmap(width, height, CONFIG);
+	}
+
+	private Bitmap take(Deque<Bitmap> bucket, long minSize)
+	{
+		if (bucket != null)
+		{
+			final Iterator<Bitmap> iterator = bucket.iterator();
+			while (iterator.hasNext())
+			{
+				final Bitmap bitmap = iterator.next();
+				if (getSize(bitmap) >= minSize)
+				{
+					iterator.remove();
+					return bitmap;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Return a bitmap from {@link #acquire(int, int)}, or any mutable ARGB bitmap, to the pool.
+	 */
+	public synchronized void release(Bitmap bitmap)
+	{
+		if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() != CONFIG)
+		{
+			return;
+		}
+
+		final long size = getSize(bitmap);
+		if (pooledBytes + size > maxBytes)
+		{
+			return;
+		}
+
+		final long key = getPooledKey(bitmap, size);
+		Deque<Bitmap> bucket = buckets.get(key);
+		if (bucket == null)
+		{
+			bucket = new ArrayDeque<>();
+			buckets.put(key, bucket);
+		}
+		bucket.push(bitmap);
+		pooledCount++;
+		pooledBytes += size;
+	}
+
+	/**
+	 * Drop every pooled bitmap.
+	 */
+	public synchronized void clear()
+	{
+		buckets.clear();
+		pooledCount = 0;
+		pooledBytes = 0;
+	}
+
+	private long getSize(Bitmap bitmap)
+	{
+		return reconfigurable ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+	}
+
+	// A request needs at most the power of two above its size, and a pooled bitmap holds at
+	// least the power of two below its allocation, so any bitmap in a request's bucket fits it
+	private long getRequestKey(int width, int height)
+	{
+		if (!reconfigurable)
+		{
+			return ((long) width << 32) | height;
+		}
+		final long bytes = (long) width * height * BYTES_PER_PIXEL;
+		return 64 - Long.numberOfLeadingZeros(Math.max(1, bytes - 1));
+	}
+
+	private long getPooledKey(Bitmap bitmap, long size)
+	{
+		if (!reconfigurable)
+		{
+			return ((long) bitmap.getWidth() << 32) | bitmap.getHeight();
+		}
+		return 63 - Long.numberOfLeadingZeros(Math.max(1, size));
+	}
+
+	public synchronized int getPooledCount()
+	{
+		return pooledCount;
+	}
+
+	public synchronized long getPooledBytes()
+	{
+		return pooledBytes;
+	}
+
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+}
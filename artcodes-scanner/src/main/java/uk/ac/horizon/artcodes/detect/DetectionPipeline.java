@@ -0,0 +1,314 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Size;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import uk.ac.horizon.artcodes.detect.frame.FrameConsumer;
+import uk.ac.horizon.artcodes.detect.handler.MarkerDetectionHandler;
+import uk.ac.horizon.artcodes.detect.marker.Marker;
+import uk.ac.horizon.artcodes.detect.marker.MarkerAreaOrderDetector;
+import uk.ac.horizon.artcodes.detect.marker.MarkerDetector;
+import uk.ac.horizon.artcodes.detect.marker.MarkerEmbeddedChecksumDetector;
+import uk.ac.horizon.artcodes.model.Experience;
+import uk.ac.horizon.artcodes.process.ImageProcessor;
+import uk.ac.horizon.artcodes.process.ImageProcessorFactory;
+import uk.ac.horizon.artcodes.process.ProcessorConfig;
+import uk.ac.horizon.artcodes.process.RedFilter;
+import uk.ac.horizon.artcodes.process.ResizeThresholder;
+import uk.ac.horizon.artcodes.process.TileThresholder;
+
+/**
+ * The image processors for an experience, and the buffers they work on. This has no dependency
+ * on Android, so can be used to detect markers in greyscale frames on any JVM, as long as the
+ * OpenCV native library has been loaded first. {@link Detector} adapts it to the camera preview.
+ * <p>
+ * The buffers and processors hold native memory that the garbage collector can't see, so a
+ * pipeline should be closed once it is no longer needed.
+ */
+public class DetectionPipeline implements FrameConsumer, Closeable
+{
+	private static final Logger logger = Logger.getLogger(DetectionPipeline.class.getName());
+	private static final Map<String, ImageProcessorFactory> factoryRegistry = new HashMap<>();
+
+	static
+	{
+		register(new MarkerDetector.Factory());
+		register(new MarkerEmbeddedChecksumDetector.Factory());
+		register(new MarkerAreaOrderDetector.Factory());
+		register(new TileThresholder.Factory());
+		register(new ResizeThresholder.Factory());
+		register(new RedFilter.Factory());
+		//register(new RGBFilter.BlueFactory());
+		//register(new RGBFilter.GreenFactory());
+	}
+
+	private final List<ImageProcessor> processors = new ArrayList<>();
+	private final ImageBuffers buffers = new ImageBuffers();
+	private final DetectorStats stats;
+	private volatile MarkerDetectionHandler handler;
+	private final List<Marker> markers = new ArrayList<>();
+	private boolean markersReported = false;
+	private Size sourceImageSize;
+	private byte[] frame;
+	private int frameWidth;
+
+	public DetectionPipeline()
+	{
+		stats = new DetectorStats(Collections.<String>emptyList());
+		buffers.setStats(stats);
+	}
+
+	/**
+	 * Create the processors listed in the experience pipeline. Entries can give parameters after
+	 * the processor name, such as "tile(min=2,max=4,blur=0)", which are parsed once here. If none
+	 * of them can be created, the default tile thresholder and marker detector are used.
+	 *
+	 * @param handler Passed the markers found by every detector in the pipeline, once per frame.
+	 *                May be null if markers are only collected with {@link #detect(Mat)}.
+	 */
+	public DetectionPipeline(Experience experience, MarkerDetectionHandler handler)
+	{
+		this.handler = handler;
+		final MarkerDetectionHandler collector = new MarkerDetectionHandler()
+		{
+			@Override
+			public void onMarkersDetected(Collection<Marker> markers, ArrayList<MatOfPoint> contours, int[] hierarchy, Size sourceImageSize)
+			{
+				// Detectors share the contours in the buffers, so their markers can be passed to
+				// the handler together once every processor has run
+				DetectionPipeline.this.markers.addAll(markers);
+				DetectionPipeline.this.sourceImageSize = sourceImageSize;
+				markersReported = true;
+			}
+		};
+
+		final List<String> stageNames = new ArrayList<>();
+		for (String processorName : experience.getPipeline())
+		{
+			ImageProcessor processor = getProcessor(processorName, experience, collector);
+			if (processor != null)
+			{
+				processors.add(processor);
+				stageNames.add(processorName);
+			}
+		}
+
+		if (processors.isEmpty())
+		{
+			processors.add(new TileThresholder());
+			processors.add(new MarkerDetector(experience, collector));
+			stageNames.add("tile");
+			stageNames.add("detect");
+		}
+
+		stats = new DetectorStats(stageNames);
+		buffers.setStats(stats);
+	}
+
+	public static void register(ImageProcessorFactory factory)
+	{
+		factoryRegistry.put(factory.getName(), factory);
+	}
+
+	private static ImageProcessor getProcessor(String string, Experience experience, MarkerDetectionHandler handler)
+	{
+		try
+		{
+			final ProcessorConfig config = ProcessorConfig.parse(string);
+			final ImageProcessorFactory factory = factoryRegistry.get(config.getName());
+			if (factory != null)
+			{
+				final ImageProcessor processor = factory.create(experience, handler, config);
+				if (!config.getUnusedKeys().isEmpty())
+				{
+					logger.warning("Ignored parameters " + config.getUnusedKeys() + " in " + string);
+				}
+				return processor;
+			}
+		}
+		catch (Exception e)
+		{
+			logger.log(Level.WARNING, e.getMessage(), e);
+		}
+
+		return null;
+	}
+
+	public List<ImageProcessor> getProcessors()
+	{
+		return processors;
+	}
+
+	public ImageBuffers getBuffers()
+	{
+		return buffers;
+	}
+
+	/**
+	 * Change the handler passed the markers found, so that the pipeline can be reused by another
+	 * scanner.
+	 */
+	public void setHandler(MarkerDetectionHandler handler)
+	{
+		this.handler = handler;
+	}
+
+	/**
+	 * Return every processor to its initial state and clear the stats, so that reusing the
+	 * pipeline behaves the same as creating a new one for the same experience.
+	 */
+	public void reset()
+	{
+		for (ImageProcessor imageProcessor : processors)
+		{
+			imageProcessor.reset();
+		}
+		markers.clear();
+		buffers.setDetected(false);
+		stats.reset();
+	}
+
+	public DetectorStats getStats()
+	{
+		return stats;
+	}
+
+	public void getSettings(List<DetectorSetting> settings)
+	{
+		for (ImageProcessor imageProcessor : processors)
+		{
+			imageProcessor.getSettings(settings);
+		}
+	}
+
+	/**
+	 * Create a buffer for whole frames of this size, which can then be passed to
+	 * {@link #process(byte[])}.
+	 */
+	@Override
+	public byte[] createBuffer(int imageWidth, int imageHeight)
+	{
+		frame = buffers.createBuffer(imageWidth, imageHeight, 8);
+		frameWidth = imageWidth;
+		buffers.setROI(null);
+		return frame;
+	}
+
+	@Override
+	public void setData(byte[] data)
+	{
+		process(data);
+	}
+
+	/**
+	 * Run every processor on a frame, which must match the size of the buffer created with
+	 * {@link ImageBuffers#createBuffer(int, int, int)}. Contours are found once, and shared by
+	 * every marker detector in the pipeline.
+	 *
+	 * @return The markers found in the frame.
+	 */
+	public List<Marker> process(byte[] data)
+	{
+		markers.clear();
+		markersReported = false;
+		final long frameStart = System.nanoTime();
+		buffers.setImage(data);
+		for (int index = 0; index < processors.size(); index++)
+		{
+			final long stageStart = System.nanoTime();
+			processors.get(index).process(buffers);
+			stats.recordStage(index, System.nanoTime() - stageStart);
+		}
+
+		if (markersReported)
+		{
+			buffers.setDetected(!markers.isEmpty());
+			final MarkerDetectionHandler handler = this.handler;
+			if (handler != null)
+			{
+				handler.onMarkersDetected(Collections.unmodifiableList(markers), buffers.getContours(), buffers.getHierarchyNodes(), sourceImageSize);
+			}
+		}
+		stats.recordFrame(System.nanoTime() - frameStart);
+		return Collections.unmodifiableList(markers);
+	}
+
+	/**
+	 * Detect markers in a whole greyscale (CV_8UC1) image. Buffers are only recreated when the
+	 * image size changes, so frames of the same size can be passed in repeatedly. A submat or other
+	 * non-continuous image is copied first.
+	 *
+	 * @return The markers found, valid until the next frame is processed.
+	 */
+	public List<Marker> detect(Mat greyscale)
+	{
+		if (greyscale.type() != CvType.CV_8UC1)
+		{
+			throw new IllegalArgumentException("Expected a greyscale image, not " + CvType.typeToString(greyscale.type()));
+		}
+
+		if (frame == null || frame.length != greyscale.total() || frameWidth != greyscale.cols())
+		{
+			createBuffer(greyscale.cols(), greyscale.rows());
+		}
+
+		if (greyscale.isContinuous())
+		{
+			greyscale.get(0, 0, frame);
+		}
+		else
+		{
+			// Copy a submat into one continuous block, so the frame is read as a whole
+			final Mat continuous = greyscale.clone();
+			continuous.get(0, 0, frame);
+			continuous.release();
+		}
+		return process(frame);
+	}
+
+	/**
+	 * Release the native memory held by the processors and buffers.
+	 */
+	@Override
+	public void close()
+	{
+		for (ImageProcessor imageProcessor : processors)
+		{
+			imageProcessor.close();
+		}
+		buffers.close();
+		markers.clear();
+		frame = null;
+	}
+}
@@ -20,19 +20,32 @@
 package uk.ac.horizon.artcodes.detect;
 
 import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
 import android.util.Log;
 import android.widget.ImageView;
 
 import org.opencv.android.OpenCVLoader;
+import org.opencv.android.Utils;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
 import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
 
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 import uk.ac.horizon.artcodes.camera.CameraInfo;
-import uk.ac.horizon.artcodes.process.ImageProcessor;
+import uk.ac.horizon.artcodes.detect.frame.FrameConsumer;
 
-public class Detector
+/**
+ * Connects a {@link DetectionPipeline} to the camera preview and overlay. Loading OpenCV and
+ * anything else that needs Android is done here, so the pipeline can run without it.
+ */
+public class Detector implements FrameConsumer, Closeable
 {
 	static
 	{
@@ -42,14 +55,42 @@ public class Detector
 		}
 	}
 
-	protected final List<ImageProcessor> pipeline = new ArrayList<>();
+	protected final DetectionPipeline pipeline;
 	protected final List<DetectorSetting> settings = new ArrayList<>();
-	protected final ImageBuffers buffers = new ImageBuffers();
+	protected final ImageBuffers buffers;
 	private ImageView overlay;
+	private Bitmap overlayBitmap;
+	private boolean statsVisible = false;
+	private boolean closed = false;
 	protected DetectorCallback callback;
 
 	public Detector()
 	{
+		this(new DetectionPipeline());
+	}
+
+	protected Detector(DetectionPipeline pipeline)
+	{
+		this.pipeline = pipeline;
+		this.buffers = pipeline.getBuffers();
+	}
+
+	public DetectionPipeline getPipeline()
+	{
+		return pipeline;
+	}
+
+	public DetectorStats getStats()
+	{
+		return pipeline.getStats();
+	}
+
+	/**
+	 * @return true if markers were detected in the last frame processed.
+	 */
+	public boolean hasDetected()
+	{
+		return buffers.hasDetected();
 	}
 
 	public void setCallback(DetectorCallback callback)
@@ -62,19 +103,26 @@ public class Detector
 		this.overlay = overlay;
 	}
 
-	public void setData(final byte[] data)
+	@Override
+	public synchronized void setData(final byte[] data)
 	{
-		buffers.setImage(data);
+		if (closed)
+		{
+			return;
+		}
+
 		try
 		{
-			for (ImageProcessor imageProcessor : pipeline)
-			{
-				imageProcessor.process(buffers);
-			}
+			pipeline.process(data);
 
 			if(overlay != null)
 			{
-				final Bitmap overlayBitmap = buffers.createOverlayBitmap();
+				if (statsVisible)
+				{
+					drawStats(buffers.getOverlay());
+				}
+
+				final Bitmap overlayBitmap = createOverlayBitmap();
 				if(overlayBitmap != null)
 				{
 					overlay.post(new Runnable()
@@ -95,13 +143,147 @@ public class Detector
 		}
 	}
 
+	private Bitmap createOverlayBitmap()
+	{
+		if (buffers.hasOverlay())
+		{
+			final Mat overlayImage = buffers.getOverlay();
+			if (overlayBitmap != null && (overlayBitmap.getWidth() != overlayImage.cols() || overlayBitmap.getHeight() != overlayImage.rows()))
+			{
+				releaseOverlayBitmap();
+			}
+			if (overlayBitmap == null)
+			{
+				overlayBitmap = BitmapPool.getShared().acquire(overlayImage.cols(), overlayImage.rows());
+			}
+			Utils.matToBitmap(overlayImage, overlayBitmap);
+			return overlayBitmap;
+		}
+		else if (overlayBitmap != null)
+		{
+			releaseOverlayBitmap();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Clear the overlay bitmap from the overlay, then return it to the pool once it is no longer
+	 * shown.
+	 */
+	private void releaseOverlayBitmap()
+	{
+		final Bitmap bitmap = overlayBitmap;
+		overlayBitmap = null;
+		if (bitmap == null)
+		{
+			return;
+		}
+		final ImageView view = overlay;
+		if (view == null)
+		{
+			BitmapPool.getShared().release(bitmap);
+			return;
+		}
+		view.post(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				view.setImageBitmap(null);
+				BitmapPool.getShared().release(bitmap);
+			}
+		});
+	}
+
+	/**
+	 * Stop processing frames and release the pipeline. Waits for any frame being processed to
+	 * finish, so once this returns the pipeline is no longer in use.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		if (closed)
+		{
+			return;
+		}
+		closed = true;
+		releasePipeline();
+		releaseOverlayBitmap();
+	}
+
+	/**
+	 * Called once when the detector is closed. Closes the pipeline, unless overridden to keep it
+	 * for reuse.
+	 */
+	protected void releasePipeline()
+	{
+		pipeline.close();
+	}
+
+	private void drawStats(Mat overlayImage)
+	{
+		final DetectorStats stats = pipeline.getStats();
+		final List<String> lines = new ArrayList<>();
+		for (DetectorStats.Timer timer : stats.getStageTimers())
+		{
+			lines.add(formatTimer(timer));
+		}
+		lines.add(formatTimer(stats.getFrameTimer()));
+		final long frames = Math.max(1, stats.getFrameCount());
+		lines.add(String.format(Locale.US, "contours %d  rejected %.1f  markers %.1f",
+				stats.getContoursScanned() / frames,
+				(float) stats.getCandidatesRejected() / frames,
+				(float) stats.getMarkersFound() / frames));
+		lines.add(String.format(Locale.US, "target %s  skipped %d",
+				stats.getTargetFps() == 0 ? "every frame" : String.format(Locale.US, "%.0ffps", stats.getTargetFps()),
+				stats.getFramesSkipped()));
+		final BitmapPool bitmapPool = BitmapPool.getShared();
+		lines.add(String.format(Locale.US, "bitmaps hit %d  miss %d  pooled %d",
+				bitmapPool.getHits(),
+				bitmapPool.getMisses(),
+				bitmapPool.getPooledCount()));
+
+		final Scalar outline = new Scalar(0, 0, 0, 255);
+		final Scalar text = new Scalar(255, 255, 255, 255);
+		for (int index = 0; index < lines.size(); index++)
+		{
+			final Point position = new Point(10, 30 * (index + 1));
+			Imgproc.putText(overlayImage, lines.get(index), position, Core.FONT_HERSHEY_SIMPLEX, 0.7, outline, 4);
+			Imgproc.putText(overlayImage, lines.get(index), position, Core.FONT_HERSHEY_SIMPLEX, 0.7, text, 2);
+		}
+	}
+
+	private static String formatTimer(DetectorStats.Timer timer)
+	{
+		return String.format(Locale.US, "%s %.1fms (p90 %.1fms)", timer.getName(), timer.getMean() / 1e6, timer.getPercentile(90) / 1e6);
+	}
+
 	private void createSettings()
 	{
 		settings.clear();
-		for (ImageProcessor imageProcessor : pipeline)
+		pipeline.getSettings(settings);
+		settings.add(new DetectorSetting()
 		{
-			imageProcessor.getSettings(settings);
-		}
+			@Override
+			public void nextValue()
+			{
+				statsVisible = !statsVisible;
+				pipeline.getStats().reset();
+			}
+
+			@Override
+			public String getName()
+			{
+				return "stats";
+			}
+
+			@Override
+			public String getValue()
+			{
+				return statsVisible ? "visible" : "hidden";
+			}
+		});
 	}
 
 	public List<DetectorSetting> getSettings()
@@ -119,6 +301,21 @@ public class Detector
 		return buffer;
 	}
 
+	/**
+	 * Create a buffer for replayed NV21 frames, as if they came from an upright rear camera with a
+	 * preview the same size as the frames.
+	 */
+	@Override
+	public byte[] createBuffer(int imageWidth, int imageHeight)
+	{
+		byte[] buffer = buffers.createBuffer(imageWidth, imageHeight, ImageFormat.getBitsPerPixel(ImageFormat.NV21));
+		buffers.setROI(createROI(imageWidth, imageHeight, imageWidth, imageHeight));
+		buffers.setRotation(0);
+		buffers.setFrontFacing(false);
+		createSettings();
+		return buffer;
+	}
+
 	protected Rect createROI(int imageWidth, int imageHeight, int surfaceWidth, int surfaceHeight)
 	{
 		if(callback != null)
@@ -19,16 +19,21 @@
 
 package uk.ac.horizon.artcodes.detect;
 
-import android.support.annotation.DrawableRes;
-import android.support.annotation.StringRes;
-
+/**
+ * A user adjustable setting of the detector, such as what to draw on the overlay. Settings are
+ * described by name and value, so that how they are presented is left to the user interface.
+ */
 public interface DetectorSetting
 {
 	void nextValue();
 
-	@DrawableRes
-	int getIcon();
+	/**
+	 * @return the name of the setting, e.g. "outline"
+	 */
+	String getName();
 
-	@StringRes
-	int getText();
+	/**
+	 * @return the name of the setting's current value, e.g. "regions"
+	 */
+	String getValue();
 }
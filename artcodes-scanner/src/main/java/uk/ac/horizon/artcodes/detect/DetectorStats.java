@@ -0,0 +1,267 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings for each stage of a {@link DetectionPipeline}, and counts of what was found in the
+ * frames processed. Everything is recorded with atomics, so stats can be read from any thread
+ * while frames are being processed.
+ */
+public class DetectorStats
+{
+	/**
+	 * A histogram of durations, in power of two nanosecond buckets.
+	 */
+	public static class Timer
+	{
+		private static final int BUCKETS = 64;
+
+		private final String name;
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		public Timer(String name)
+		{
+			this.name = name;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public void record(long nanos)
+		{
+			if (nanos < 0)
+			{
+				return;
+			}
+			buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos) - 1 + (nanos == 0 ? 1 : 0));
+			count.incrementAndGet();
+			total.addAndGet(nanos);
+			long currentMax = max.get();
+			while (nanos > currentMax && !max.compareAndSet(currentMax, nanos))
+			{
+				currentMax = max.get();
+			}
+		}
+
+		public long getCount()
+		{
+			return count.get();
+		}
+
+		/**
+		 * @return The mean duration, in nanoseconds.
+		 */
+		public long getMean()
+		{
+			final long frames = count.get();
+			return frames == 0 ? 0 : total.get() / frames;
+		}
+
+		/**
+		 * @return The longest duration, in nanoseconds.
+		 */
+		public long getMax()
+		{
+			return max.get();
+		}
+
+		/**
+		 * @param percentile Between 0 and 100.
+		 * @return An upper bound of the duration at the percentile, in nanoseconds. As buckets
+		 * are powers of two this is within a factor of two.
+		 */
+		public long getPercentile(double percentile)
+		{
+			final long frames = count.get();
+			if (frames == 0)
+			{
+				return 0;
+			}
+			final long target = (long) Math.ceil(frames * percentile / 100);
+			long seen = 0;
+			for (int bucket = 0; bucket < BUCKETS; bucket++)
+			{
+				seen += buckets.get(bucket);
+				if (seen >= target)
+				{
+					return Math.min(max.get(), bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1);
+				}
+			}
+			return max.get();
+		}
+
+		public void reset()
+		{
+			for (int bucket = 0; bucket < BUCKETS; bucket++)
+			{
+				buckets.set(bucket, 0);
+			}
+			count.set(0);
+			total.set(0);
+			max.set(0);
+		}
+
+		@Override
+		public String toString()
+		{
+			return name + ": mean " + TimeUnit.NANOSECONDS.toMicros(getMean()) + "us, p90 "
+					+ TimeUnit.NANOSECONDS.toMicros(getPercentile(90)) + "us, max "
+					+ TimeUnit.NANOSECONDS.toMicros(getMax()) + "us";
+		}
+	}
+
+	private final List<Timer> stageTimers;
+	private final Timer frameTimer = new Timer("frame");
+	private final AtomicLong markersFound = new AtomicLong();
+	private final AtomicLong contoursScanned = new AtomicLong();
+	private final AtomicLong candidatesRejected = new AtomicLong();
+	private final AtomicLong framesSkipped = new AtomicLong();
+	private volatile float targetFps = 0;
+
+	/**
+	 * @param stageNames The name of each image processor, in pipeline order.
+	 */
+	public DetectorStats(List<String> stageNames)
+	{
+		final List<Timer> timers = new ArrayList<>(stageNames.size());
+		for (String stageName : stageNames)
+		{
+			timers.add(new Timer(stageName));
+		}
+		this.stageTimers = Collections.unmodifiableList(timers);
+	}
+
+	public List<Timer> getStageTimers()
+	{
+		return stageTimers;
+	}
+
+	/**
+	 * The time taken to run the whole pipeline on a frame. Its count is the number of frames.
+	 */
+	public Timer getFrameTimer()
+	{
+		return frameTimer;
+	}
+
+	public long getFrameCount()
+	{
+		return frameTimer.getCount();
+	}
+
+	public long getMarkersFound()
+	{
+		return markersFound.get();
+	}
+
+	public long getContoursScanned()
+	{
+		return contoursScanned.get();
+	}
+
+	/**
+	 * @return The number of contours that contained at least one valid region, but did not make
+	 * a valid marker.
+	 */
+	public long getCandidatesRejected()
+	{
+		return candidatesRejected.get();
+	}
+
+	/**
+	 * @return The number of camera frames not processed because of the frame rate limit.
+	 */
+	public long getFramesSkipped()
+	{
+		return framesSkipped.get();
+	}
+
+	/**
+	 * @return The frame rate that frames are currently processed at, or 0 if every frame is
+	 * processed.
+	 */
+	public float getTargetFps()
+	{
+		return targetFps;
+	}
+
+	public void setTargetFps(float targetFps)
+	{
+		this.targetFps = targetFps;
+	}
+
+	public void recordStage(int stage, long nanos)
+	{
+		if (stage < stageTimers.size())
+		{
+			stageTimers.get(stage).record(nanos);
+		}
+	}
+
+	public void recordFrame(long nanos)
+	{
+		frameTimer.record(nanos);
+	}
+
+	public void addMarkersFound(int markers)
+	{
+		markersFound.addAndGet(markers);
+	}
+
+	public void addContoursScanned(int contours)
+	{
+		contoursScanned.addAndGet(contours);
+	}
+
+	public void addCandidatesRejected(int candidates)
+	{
+		candidatesRejected.addAndGet(candidates);
+	}
+
+	public void addFramesSkipped(int frames)
+	{
+		framesSkipped.addAndGet(frames);
+	}
+
+	public void reset()
+	{
+		for (Timer timer : stageTimers)
+		{
+			timer.reset();
+		}
+		frameTimer.reset();
+		markersFound.set(0);
+		contoursScanned.set(0);
+		candidatesRejected.set(0);
+		framesSkipped.set(0);
+	}
+}
@@ -19,42 +19,140 @@
 
 package uk.ac.horizon.artcodes.detect;
 
-import android.graphics.Bitmap;
-
-import org.opencv.android.Utils;
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.Closeable;
+import java.util.ArrayList;
 
-public class ImageBuffers
+public class ImageBuffers implements Closeable
 {
 	private byte[] buffer;
 	private Mat cameraImage;
 	private Mat image;
+	// The image processors work on in this frame, which is the image unless a processor replaces it
+	private Mat frameImage;
 	private Mat overlay;
 	private Mat temp;
-	private Bitmap overlayBitmap;
 	private boolean overlayReady = false;
+	private boolean rotatedForDetection = false;
 	private boolean detected = false;
 	private boolean flip = false;
 	private int rotations = 0;
+	private DetectorStats stats;
+	private final ArrayList<MatOfPoint> contours = new ArrayList<>();
+	private Mat hierarchy;
+	private int[] nodes = new int[0];
+	private boolean contoursReady = false;
 
 	public Mat getImage()
 	{
-		return image;
+		return frameImage;
 	}
 
 	public void setImage(byte[] data)
 	{
 		overlayReady = false;
+		releaseContours();
 		cameraImage.put(0, 0, data);
+		frameImage = image;
+	}
+
+	/**
+	 * Use another image for the rest of this frame, such as one a processor has resized the image
+	 * into. Processors must not change the size of the image itself, as it is backed by the
+	 * camera buffer. The replacement is owned by the processor, and the image from the camera is
+	 * used again from the next frame.
+	 */
+	public void replaceImage(Mat replacement)
+	{
+		frameImage = replacement;
+		releaseContours();
+	}
+
+	/**
+	 * Find the contours in the thresholded image, the first time this is called for a frame.
+	 * OpenCV modifies the image while finding contours, so every marker detector in the pipeline
+	 * shares these rather than finding their own. They are valid until the next frame is set.
+	 */
+	public ArrayList<MatOfPoint> getContours()
+	{
+		if (!contoursReady)
+		{
+			if (hierarchy == null)
+			{
+				hierarchy = new Mat();
+			}
+			Imgproc.findContours(frameImage, contours, hierarchy, Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_NONE);
+
+			// Reading each node from the Mat allocates a new array, so copy them all at once
+			final int count = contours.size();
+			if (nodes.length < count * 4)
+			{
+				nodes = new int[count * 4];
+			}
+			if (count > 0)
+			{
+				hierarchy.get(0, 0, nodes);
+			}
+
+			if (stats != null)
+			{
+				stats.addContoursScanned(count);
+			}
+			contoursReady = true;
+		}
+		return contours;
 	}
 
+	/**
+	 * @return The hierarchy of the contours from {@link #getContours()}.
+	 */
+	public Mat getHierarchy()
+	{
+		getContours();
+		return hierarchy;
+	}
+
+	/**
+	 * @return The hierarchy of the contours from {@link #getContours()} as an array, with the
+	 * [next, previous, first child, parent] of contour i at [i * 4] to [i * 4 + 3].
+	 */
+	public int[] getHierarchyNodes()
+	{
+		getContours();
+		return nodes;
+	}
+
+	private void releaseContours()
+	{
+		for (MatOfPoint contour : contours)
+		{
+			contour.release();
+		}
+		contours.clear();
+		contoursReady = false;
+	}
+
+	/**
+	 * Create the buffer for camera frames. If the size hasn't changed since the last call, the
+	 * existing buffer and image are reused.
+	 */
 	public byte[] createBuffer(int imageWidth, int imageHeight, int imageDepth)
 	{
-		buffer = new byte[imageWidth * imageHeight * imageDepth / 8];
+		final int size = imageWidth * imageHeight * imageDepth / 8;
+		if (buffer != null && buffer.length == size && cameraImage.cols() == imageWidth && cameraImage.rows() == imageHeight)
+		{
+			return buffer;
+		}
+
+		release();
+		buffer = new byte[size];
 		// TODO Change depth based on image processors used?
 		cameraImage = new Mat(imageHeight, imageWidth, CvType.CV_8UC1);
 		return buffer;
@@ -62,6 +160,10 @@ public class ImageBuffers
 
 	public void setROI(Rect rect)
 	{
+		if (image != null && image != cameraImage)
+		{
+			image.release();
+		}
 		if (rect == null)
 		{
 			image = cameraImage;
@@ -70,6 +172,21 @@ public class ImageBuffers
 		{
 			image = cameraImage.submat(rect);
 		}
+		frameImage = image;
+
+		// The overlay and temp images are the size of the image, so are recreated if it changes
+		if (overlay != null && (overlay.cols() != image.cols() || overlay.rows() != image.rows()))
+		{
+			overlay.release();
+			overlay = null;
+		}
+		if (temp != null && (temp.cols() != image.cols() || temp.rows() != image.rows()))
+		{
+			temp.release();
+			temp = null;
+		}
+		overlayReady = false;
+		releaseContours();
 	}
 
 	public boolean hasDetected()
@@ -87,23 +204,39 @@ public class ImageBuffers
 		return getOverlay(true);
 	}
 
-	public Bitmap createOverlayBitmap()
+	/**
+	 * @return true if the overlay has been drawn on this frame.
+	 */
+	public boolean hasOverlay()
 	{
-		if (overlayReady)
-		{
-			if (overlayBitmap == null)
-			{
-				overlayBitmap = Bitmap.createBitmap(overlay.cols(), overlay.rows(), Bitmap.Config.ARGB_8888);
-			}
-			Utils.matToBitmap(overlay, overlayBitmap);
-			return overlayBitmap;
-		}
-		else if (overlayBitmap != null)
-		{
-			overlayBitmap = null;
-		}
+		return overlayReady;
+	}
+
+	/**
+	 * @return true if the image should always be rotated to the display orientation before
+	 * markers are detected, so that contours passed to handlers match what's on screen.
+	 */
+	public boolean isRotatedForDetection()
+	{
+		return rotatedForDetection;
+	}
+
+	public void setRotatedForDetection(boolean rotatedForDetection)
+	{
+		this.rotatedForDetection = rotatedForDetection;
+	}
+
+	/**
+	 * @return The stats for processors to add frame counts to, or null if they aren't recorded.
+	 */
+	public DetectorStats getStats()
+	{
+		return stats;
+	}
 
-		return null;
+	public void setStats(DetectorStats stats)
+	{
+		this.stats = stats;
 	}
 
 	public void setRotation(int rotation)
@@ -132,7 +265,7 @@ public class ImageBuffers
 			return overlay;
 		}
 
-		rotate(image);
+		rotate(frameImage);
 
 		if (overlay == null)
 		{
@@ -164,4 +297,47 @@ public class ImageBuffers
 			Core.flip(image, image, flip_horizontal_or_vertical);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Release the native memory held by the images. The buffers can be used again after
+	 * {@link #createBuffer(int, int, int)} and {@link #setROI(Rect)} are called.
+	 */
+	@Override
+	public void close()
+	{
+		release();
+		buffer = null;
+	}
+
+	private void release()
+	{
+		releaseContours();
+		if (hierarchy != null)
+		{
+			hierarchy.release();
+			hierarchy = null;
+		}
+		if (image != null && image != cameraImage)
+		{
+			image.release();
+		}
+		image = null;
+		frameImage = null;
+		if (cameraImage != null)
+		{
+			cameraImage.release();
+			cameraImage = null;
+		}
+		if (overlay != null)
+		{
+			overlay.release();
+			overlay = null;
+		}
+		if (temp != null)
+		{
+			temp.release();
+			temp = null;
+		}
+		overlayReady = false;
+	}
+}
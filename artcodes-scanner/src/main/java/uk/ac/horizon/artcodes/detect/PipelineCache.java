@@ -0,0 +1,149 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import uk.ac.horizon.artcodes.detect.handler.MarkerDetectionHandler;
+import uk.ac.horizon.artcodes.model.Action;
+import uk.ac.horizon.artcodes.model.Experience;
+
+/**
+ * Keeps pipelines that are no longer in use, so that scanning the same experience again reuses
+ * its processors and buffers rather than parsing its codes and allocating images again.
+ * Pipelines are keyed by experience id, pipeline and codes, so an edited experience gets a new
+ * pipeline. A pipeline is only given out to one user at a time. Pipelines dropped from the cache
+ * are closed.
+ */
+public class PipelineCache
+{
+	private final Map<String, DetectionPipeline> idle;
+	private final Map<DetectionPipeline, String> inUse = new IdentityHashMap<>();
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * @param maxIdle The number of unused pipelines to keep.
+	 */
+	public PipelineCache(final int maxIdle)
+	{
+		this.idle = new LinkedHashMap<String, DetectionPipeline>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, DetectionPipeline> eldest)
+			{
+				if (size() > maxIdle)
+				{
+					eldest.getValue().close();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public static String getKey(Experience experience)
+	{
+		final StringBuilder builder = new StringBuilder();
+		builder.append(experience.getId());
+		builder.append('\n');
+		builder.append(experience.getPipeline());
+		for (Action action : experience.getActions())
+		{
+			builder.append('\n');
+			builder.append(action.getCodes());
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Get a pipeline for the experience, reset to its initial state. It must be released once it
+	 * is no longer used.
+	 */
+	public synchronized DetectionPipeline acquire(Experience experience, MarkerDetectionHandler handler)
+	{
+		final String key = getKey(experience);
+		DetectionPipeline pipeline = idle.remove(key);
+		if (pipeline != null)
+		{
+			hits++;
+			pipeline.reset();
+			pipeline.setHandler(handler);
+		}
+		else
+		{
+			misses++;
+			pipeline = new DetectionPipeline(experience, handler);
+		}
+		inUse.put(pipeline, key);
+		return pipeline;
+	}
+
+	/**
+	 * Return a pipeline from {@link #acquire(Experience, MarkerDetectionHandler)} to the cache.
+	 */
+	public synchronized void release(DetectionPipeline pipeline)
+	{
+		final String key = inUse.remove(pipeline);
+		if (key != null)
+		{
+			pipeline.setHandler(null);
+			final DetectionPipeline replaced = idle.put(key, pipeline);
+			if (replaced != null)
+			{
+				replaced.close();
+			}
+		}
+	}
+
+	/**
+	 * Close and drop every idle pipeline. Pipelines in use are not affected.
+	 */
+	public synchronized void clear()
+	{
+		for (DetectionPipeline pipeline : idle.values())
+		{
+			pipeline.close();
+		}
+		idle.clear();
+	}
+
+	public synchronized int getIdleCount()
+	{
+		return idle.size();
+	}
+
+	public synchronized int getInUseCount()
+	{
+		return inUse.size();
+	}
+
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+}
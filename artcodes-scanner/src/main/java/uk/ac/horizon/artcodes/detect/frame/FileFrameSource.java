@@ -0,0 +1,176 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.frame;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replays the frames in a directory, in file name order. Frames are either raw preview dumps,
+ * named name_WIDTHxHEIGHT.nv21 as written by {@link FrameRecorder}, or images that OpenCV can
+ * decode, which are converted to greyscale. Every frame must be the same size.
+ */
+public class FileFrameSource implements FrameSource
+{
+	private static final Pattern NV21_NAME = Pattern.compile(".*_(\\d+)x(\\d+)\\.nv21");
+
+	private final List<File> files = new ArrayList<>();
+	private final int width;
+	private final int height;
+	private int index = 0;
+
+	public FileFrameSource(File directory) throws IOException
+	{
+		final File[] list = directory.listFiles();
+		if (list == null)
+		{
+			throw new FileNotFoundException(directory + " is not a directory");
+		}
+		Arrays.sort(list);
+		for (File file : list)
+		{
+			if (file.isFile() && !file.isHidden())
+			{
+				files.add(file);
+			}
+		}
+
+		if (files.isEmpty())
+		{
+			throw new FileNotFoundException("No frames in " + directory);
+		}
+
+		final File first = files.get(0);
+		final Matcher matcher = NV21_NAME.matcher(first.getName());
+		if (matcher.matches())
+		{
+			width = Integer.parseInt(matcher.group(1));
+			height = Integer.parseInt(matcher.group(2));
+		}
+		else
+		{
+			final Mat image = decode(first);
+			width = image.cols();
+			height = image.rows();
+			image.release();
+		}
+	}
+
+	@Override
+	public int getWidth()
+	{
+		return width;
+	}
+
+	@Override
+	public int getHeight()
+	{
+		return height;
+	}
+
+	public int getFrameCount()
+	{
+		return files.size();
+	}
+
+	@Override
+	public boolean read(byte[] buffer) throws IOException
+	{
+		if (index >= files.size())
+		{
+			return false;
+		}
+
+		final File file = files.get(index++);
+		final Matcher matcher = NV21_NAME.matcher(file.getName());
+		if (matcher.matches())
+		{
+			checkSize(file, Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+			readFully(file, buffer);
+		}
+		else
+		{
+			final Mat image = decode(file);
+			try
+			{
+				checkSize(file, image.cols(), image.rows());
+				image.get(0, 0, buffer);
+			}
+			finally
+			{
+				image.release();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void close()
+	{
+		index = files.size();
+	}
+
+	private void checkSize(File file, int frameWidth, int frameHeight) throws IOException
+	{
+		if (frameWidth != width || frameHeight != height)
+		{
+			throw new IOException(file + " is " + frameWidth + "x" + frameHeight + ", expected " + width + "x" + height);
+		}
+	}
+
+	private static Mat decode(File file) throws IOException
+	{
+		final Mat image = Imgcodecs.imread(file.getAbsolutePath(), Imgcodecs.IMREAD_GRAYSCALE);
+		if (image.empty())
+		{
+			throw new IOException("Could not read " + file);
+		}
+		return image;
+	}
+
+	private static void readFully(File file, byte[] buffer) throws IOException
+	{
+		final InputStream input = new FileInputStream(file);
+		try
+		{
+			int offset = 0;
+			int read;
+			while (offset < buffer.length && (read = input.read(buffer, offset, buffer.length - offset)) != -1)
+			{
+				offset += read;
+			}
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.frame;
+
+/**
+ * Receives frames from a {@link FrameReplayer}, in place of the camera preview.
+ */
+public interface FrameConsumer
+{
+	/**
+	 * @return A buffer for frames of this size, which will be passed to {@link #setData(byte[])}
+	 * for every frame.
+	 */
+	byte[] createBuffer(int imageWidth, int imageHeight);
+
+	void setData(byte[] data);
+}
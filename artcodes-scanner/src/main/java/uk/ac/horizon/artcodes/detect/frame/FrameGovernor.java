@@ -0,0 +1,163 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.frame;
+
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.horizon.artcodes.detect.DetectorStats;
+
+/**
+ * Decides which camera frames are passed on to be processed. Every frame is processed while
+ * markers are being detected. Once nothing has been detected for a while the rate drops to a low
+ * duty cycle, so a scanner left running at a kiosk or installation uses less battery. The rate is
+ * also capped by {@link #setMaxFps(float)}, which is lowered when the device is hot or its battery
+ * is low.
+ */
+public class FrameGovernor
+{
+	public static final float UNLIMITED = Float.POSITIVE_INFINITY;
+
+	private final float activeFps;
+	private final float idleFps;
+	private final long idleNanos;
+	private volatile float maxFps = UNLIMITED;
+	private DetectorStats stats;
+	private boolean started = false;
+	private long nextFrame;
+	private long lastDetected;
+
+	/**
+	 * Process every frame while active, then 5 frames a second once nothing has been detected for
+	 * 3 seconds.
+	 */
+	public FrameGovernor()
+	{
+		this(UNLIMITED, 5, 3, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @param activeFps The frame rate while markers are being detected, or {@link #UNLIMITED}.
+	 * @param idleFps   The frame rate once nothing has been detected for the idle delay.
+	 */
+	public FrameGovernor(float activeFps, float idleFps, long idleDelay, TimeUnit unit)
+	{
+		if (activeFps <= 0 || idleFps <= 0)
+		{
+			throw new IllegalArgumentException("Frame rates must be positive");
+		}
+		this.activeFps = activeFps;
+		this.idleFps = idleFps;
+		this.idleNanos = unit.toNanos(idleDelay);
+	}
+
+	/**
+	 * @param stats Updated with the target frame rate and number of frames skipped, or null.
+	 */
+	public synchronized void setStats(DetectorStats stats)
+	{
+		this.stats = stats;
+	}
+
+	/**
+	 * Cap the frame rate, whether active or idle.
+	 *
+	 * @param maxFps The maximum frame rate, or {@link #UNLIMITED}.
+	 */
+	public void setMaxFps(float maxFps)
+	{
+		this.maxFps = maxFps;
+	}
+
+	public float getMaxFps()
+	{
+		return maxFps;
+	}
+
+	/**
+	 * Start again as if markers had just been detected, such as when the scanner is restarted.
+	 */
+	public synchronized void reset()
+	{
+		started = false;
+	}
+
+	/**
+	 * @param now The frame time, from {@link System#nanoTime()}.
+	 * @return The frame rate frames are processed at, or {@link #UNLIMITED}.
+	 */
+	public synchronized float getTargetFps(long now)
+	{
+		final boolean active = !started || now - lastDetected < idleNanos;
+		return Math.min(active ? activeFps : idleFps, maxFps);
+	}
+
+	/**
+	 * @param now The frame time, from {@link System#nanoTime()}.
+	 * @return true if the frame should be processed. If so, {@link #frameProcessed(boolean, long)}
+	 * should be called once it has been.
+	 */
+	public synchronized boolean shouldProcess(long now)
+	{
+		if (!started)
+		{
+			started = true;
+			lastDetected = now;
+			nextFrame = now;
+		}
+
+		final float targetFps = getTargetFps(now);
+		if (stats != null)
+		{
+			stats.setTargetFps(targetFps == UNLIMITED ? 0 : targetFps);
+		}
+
+		if (targetFps == UNLIMITED)
+		{
+			nextFrame = now;
+			return true;
+		}
+
+		final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / targetFps);
+		if (now - nextFrame < 0)
+		{
+			if (stats != null)
+			{
+				stats.addFramesSkipped(1);
+			}
+			return false;
+		}
+
+		// Keep to the frame rate on average when the camera's frame interval doesn't divide into
+		// it, unless frames have been so far apart that there's nothing to catch up on
+		nextFrame = now - nextFrame > interval ? now + interval : nextFrame + interval;
+		return true;
+	}
+
+	/**
+	 * @param detected true if markers were detected in the frame.
+	 */
+	public synchronized void frameProcessed(boolean detected, long now)
+	{
+		if (detected)
+		{
+			lastDetected = now;
+		}
+	}
+}
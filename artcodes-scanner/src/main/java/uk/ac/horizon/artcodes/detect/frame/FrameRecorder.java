@@ -0,0 +1,156 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.frame;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes preview frames to a directory so that a session can be replayed later with
+ * {@link FileFrameSource}. Each frame is written as is, named with its index and size.
+ * <p>
+ * Frames are copied and written on a background thread, so recording doesn't stall the camera
+ * thread. If the writes fall more than a few frames behind, further frames are dropped rather
+ * than queued, so a recorded session can have gaps on slow storage.
+ */
+public class FrameRecorder implements Closeable
+{
+	private static final int MAX_PENDING = 4;
+	private final File directory;
+	private final int maxFrames;
+	private final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(MAX_PENDING));
+	private volatile IOException error;
+	private int frameCount = 0;
+	private int droppedCount = 0;
+
+	/**
+	 * @param maxFrames The number of frames to record before ignoring any more, or 0 for no limit.
+	 */
+	public FrameRecorder(File directory, int maxFrames) throws IOException
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Could not create " + directory);
+		}
+		this.directory = directory;
+		this.maxFrames = maxFrames;
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	public int getFrameCount()
+	{
+		return frameCount;
+	}
+
+	public int getDroppedCount()
+	{
+		return droppedCount;
+	}
+
+	/**
+	 * @return false if the frame wasn't recorded because the limit has been reached.
+	 * @throws IOException if an earlier frame couldn't be written.
+	 */
+	public boolean record(byte[] data, int imageWidth, int imageHeight) throws IOException
+	{
+		if (error != null)
+		{
+			throw error;
+		}
+		if (maxFrames > 0 && frameCount >= maxFrames)
+		{
+			return false;
+		}
+
+		final File file = new File(directory, String.format(Locale.US, "%06d_%dx%d.nv21", frameCount, imageWidth, imageHeight));
+		final byte[] frame = data.clone();
+		try
+		{
+			writer.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						write(file, frame);
+					}
+					catch (IOException e)
+					{
+						error = e;
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			droppedCount++;
+			return true;
+		}
+		frameCount++;
+		return true;
+	}
+
+	/**
+	 * Waits for any frames still being written.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		writer.shutdown();
+		try
+		{
+			writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		if (error != null)
+		{
+			throw error;
+		}
+	}
+
+	private static void write(File file, byte[] frame) throws IOException
+	{
+		final OutputStream output = new FileOutputStream(file);
+		try
+		{
+			output.write(frame);
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.frame;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds every frame from a source to a consumer, either at a fixed frame rate, to match a live
+ * camera, or as fast as the consumer can process them. The time spent in the consumer is
+ * recorded, so runs can be compared.
+ */
+public class FrameReplayer implements Runnable
+{
+	private final FrameSource source;
+	private final FrameConsumer consumer;
+	private final long frameInterval;
+	private volatile int frameCount = 0;
+	private volatile long processingTime = 0;
+	private volatile long maxProcessingTime = 0;
+	private volatile long startTime = 0;
+	private IOException error;
+
+	/**
+	 * @param framesPerSecond The rate to replay frames at, or 0 to replay them as fast as possible.
+	 */
+	public FrameReplayer(FrameSource source, FrameConsumer consumer, int framesPerSecond)
+	{
+		this.source = source;
+		this.consumer = consumer;
+		this.frameInterval = framesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / framesPerSecond : 0;
+	}
+
+	@Override
+	public void run()
+	{
+		final byte[] buffer = consumer.createBuffer(source.getWidth(), source.getHeight());
+		startTime = System.nanoTime();
+		long nextFrame = startTime;
+		try
+		{
+			while (!Thread.currentThread().isInterrupted() && source.read(buffer))
+			{
+				if (frameInterval > 0)
+				{
+					final long wait = nextFrame - System.nanoTime();
+					if (wait > 0)
+					{
+						TimeUnit.NANOSECONDS.sleep(wait);
+					}
+					nextFrame += frameInterval;
+				}
+
+				final long frameStart = System.nanoTime();
+				consumer.setData(buffer);
+				final long frameTime = System.nanoTime() - frameStart;
+
+				processingTime += frameTime;
+				maxProcessingTime = Math.max(maxProcessingTime, frameTime);
+				frameCount++;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException e)
+		{
+			error = e;
+		}
+	}
+
+	/**
+	 * @return The number of frames passed to the consumer so far. Read from a marker handler, this
+	 * gives the number of frames it took to detect a marker.
+	 */
+	public int getFrameCount()
+	{
+		return frameCount;
+	}
+
+	/**
+	 * @return The time since the replay started, in nanoseconds.
+	 */
+	public long getElapsedTime()
+	{
+		return startTime == 0 ? 0 : System.nanoTime() - startTime;
+	}
+
+	/**
+	 * @return The mean time the consumer took to process a frame, in nanoseconds.
+	 */
+	public long getMeanProcessingTime()
+	{
+		final int frames = frameCount;
+		return frames == 0 ? 0 : processingTime / frames;
+	}
+
+	public long getMaxProcessingTime()
+	{
+		return maxProcessingTime;
+	}
+
+	/**
+	 * @return The error that stopped the replay early, if any.
+	 */
+	public IOException getError()
+	{
+		return error;
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.frame;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A sequence of frames of the same size, with the greyscale (Y) plane first, as in the NV21
+ * camera preview format.
+ */
+public interface FrameSource extends Closeable
+{
+	int getWidth();
+
+	int getHeight();
+
+	/**
+	 * Read the next frame into buffer. If the buffer is larger than the frame, only the start of
+	 * it is overwritten.
+	 *
+	 * @return false if there are no more frames.
+	 */
+	boolean read(byte[] buffer) throws IOException;
+}
@@ -0,0 +1,246 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import uk.ac.horizon.artcodes.model.Action;
+import uk.ac.horizon.artcodes.model.Experience;
+
+/**
+ * The actions of an experience, indexed once and shared by every handler scanning it.
+ * <p>
+ * Single codes ("any" actions, and actions with one code) are looked up by code. Each code used
+ * by a group ("all" action with at least 2 codes) is given a bit, and each group has a bitset of
+ * its codes, so whether the detected codes contain a group, or could still become one, is a
+ * couple of word operations per group rather than a lookup of every combination of codes.
+ */
+public class ActionIndex
+{
+	private static final Map<Experience, ActionIndex> indexes = new WeakHashMap<>();
+
+	private final String key;
+	private final Map<String, Action> codeActions = new HashMap<>();
+	private final Map<String, Integer> codeBits = new HashMap<>();
+	private final List<Action> groups = new ArrayList<>();
+	private final List<List<String>> groupCodes = new ArrayList<>();
+	private final long[][] groupMasks;
+	private final int words;
+
+	/**
+	 * Get the index for an experience. The index is rebuilt if the experience's codes have
+	 * changed since it was last indexed.
+	 */
+	public static synchronized ActionIndex get(Experience experience)
+	{
+		final String key = getKey(experience);
+		ActionIndex index = indexes.get(experience);
+		if (index == null || !index.key.equals(key))
+		{
+			index = new ActionIndex(experience, key);
+			indexes.put(experience, index);
+		}
+		return index;
+	}
+
+	private static String getKey(Experience experience)
+	{
+		final StringBuilder builder = new StringBuilder();
+		for (Action action : experience.getActions())
+		{
+			builder.append(action.getMatch());
+			builder.append(action.getCodes());
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+
+	private ActionIndex(Experience experience, String key)
+	{
+		this.key = key;
+		final List<Action> allGroups = new ArrayList<>();
+		final List<List<String>> allGroupCodes = new ArrayList<>();
+		for (Action action : experience.getActions())
+		{
+			if (action.getMatch() == Action.Match.any || action.getCodes().size() == 1)
+			{
+				for (String code : action.getCodes())
+				{
+					codeActions.put(code, action);
+				}
+			}
+			else if (action.getMatch() == Action.Match.all)
+			{
+				final List<String> codes = new ArrayList<>(new LinkedHashSet<>(action.getCodes()));
+				if (codes.size() > 1)
+				{
+					for (String code : codes)
+					{
+						if (!codeBits.containsKey(code))
+						{
+							codeBits.put(code, codeBits.size());
+						}
+					}
+					allGroups.add(action);
+					allGroupCodes.add(Collections.unmodifiableList(codes));
+				}
+			}
+		}
+
+		// Biggest groups first, otherwise in experience order
+		final List<Integer> order = new ArrayList<>();
+		for (int group = 0; group < allGroups.size(); group++)
+		{
+			order.add(group);
+		}
+		Collections.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer group1, Integer group2)
+			{
+				return allGroupCodes.get(group2).size() - allGroupCodes.get(group1).size();
+			}
+		});
+		for (int group : order)
+		{
+			groups.add(allGroups.get(group));
+			groupCodes.add(allGroupCodes.get(group));
+		}
+
+		this.words = (codeBits.size() + 63) / 64;
+		this.groupMasks = new long[groups.size()][];
+		for (int group = 0; group < groups.size(); group++)
+		{
+			groupMasks[group] = new long[words];
+			for (String code : groupCodes.get(group))
+			{
+				final int bit = codeBits.get(code);
+				groupMasks[group][bit / 64] |= 1L << (bit % 64);
+			}
+		}
+	}
+
+	/**
+	 * @return The action for a single code, or null if the code isn't in the experience on its own.
+	 */
+	public Action getCodeAction(String code)
+	{
+		return codeActions.get(code);
+	}
+
+	/**
+	 * @return The number of groups. Groups are numbered biggest first.
+	 */
+	public int getGroupCount()
+	{
+		return groups.size();
+	}
+
+	public Action getGroup(int group)
+	{
+		return groups.get(group);
+	}
+
+	/**
+	 * @return The codes of a group, without duplicates.
+	 */
+	public List<String> getGroupCodes(int group)
+	{
+		return groupCodes.get(group);
+	}
+
+	/**
+	 * Create an empty set of codes, to be used with the other code set methods. A code set can be
+	 * reused by clearing it.
+	 */
+	public long[] createCodeSet()
+	{
+		return new long[words];
+	}
+
+	public void clearCodeSet(long[] codeSet)
+	{
+		Arrays.fill(codeSet, 0);
+	}
+
+	/**
+	 * @return false if the code isn't in any group, so it isn't added to the set.
+	 */
+	public boolean addToCodeSet(long[] codeSet, String code)
+	{
+		final Integer bit = codeBits.get(code);
+		if (bit == null)
+		{
+			return false;
+		}
+		codeSet[bit / 64] |= 1L << (bit % 64);
+		return true;
+	}
+
+	public int getCodeSetSize(long[] codeSet)
+	{
+		int size = 0;
+		for (long word : codeSet)
+		{
+			size += Long.bitCount(word);
+		}
+		return size;
+	}
+
+	/**
+	 * @return true if every code of the group is in the set.
+	 */
+	public boolean containsGroup(long[] codeSet, int group)
+	{
+		final long[] mask = groupMasks[group];
+		for (int word = 0; word < words; word++)
+		{
+			if ((mask[word] & ~codeSet[word]) != 0)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if every code in the set is in the group.
+	 */
+	public boolean isInGroup(long[] codeSet, int group)
+	{
+		final long[] mask = groupMasks[group];
+		for (int word = 0; word < words; word++)
+		{
+			if ((codeSet[word] & ~mask[word]) != 0)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -28,8 +28,6 @@ import java.util.Collection;
 import java.util.List;
 
 import uk.ac.horizon.artcodes.detect.marker.Marker;
-import uk.ac.horizon.artcodes.model.Action;
-import uk.ac.horizon.artcodes.model.MarkerImage;
 
 public interface CodeDetectionHandler
 {
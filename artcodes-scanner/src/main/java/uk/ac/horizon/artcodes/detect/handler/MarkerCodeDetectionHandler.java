@@ -19,17 +19,11 @@
 
 package uk.ac.horizon.artcodes.detect.handler;
 
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
-import com.google.common.collect.Multisets;
-
-import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Size;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
 
 import uk.ac.horizon.artcodes.detect.handler.CodeDetectionHandler;
 import uk.ac.horizon.artcodes.detect.handler.MarkerDetectionHandler;
@@ -43,7 +37,7 @@ public class MarkerCodeDetectionHandler implements MarkerDetectionHandler
     protected static final int MAX = REQUIRED * 4;
 	protected static final int OCCURRENCES = 2;
 
-    protected final Multiset<String> markerCounts = HashMultiset.create();
+    protected final MarkerVotes markerCounts = new MarkerVotes();
     private final CodeDetectionHandler markerCodeHandler;
 
     public MarkerCodeDetectionHandler(CodeDetectionHandler markerCodeHandler)
@@ -52,21 +46,27 @@ public class MarkerCodeDetectionHandler implements MarkerDetectionHandler
     }
 
     @Override
-    public void onMarkersDetected(Collection<Marker> markers, ArrayList<MatOfPoint> contours, Mat hierarchy, Size sourceImageSize)
+    public void onMarkersDetected(Collection<Marker> markers, ArrayList<MatOfPoint> contours, int[] hierarchy, Size sourceImageSize)
     {
-        actOnMarkers(countMarkers(markers));
+        // While the same markers stay in view with their votes capped, the selected code can't
+        // change, so there's no need to select it again
+        final MarkerVotes votes = countMarkers(markers);
+        if (votes.hasChanged())
+        {
+            actOnMarkers(votes);
+        }
     }
 
-    protected void actOnMarkers(Multiset<String> markers)
+    protected void actOnMarkers(MarkerVotes markers)
     {
         int best = 0;
         String selected = null;
-        for (String code : markers.elementSet())
+        for (int index = 0; index < markers.size(); index++)
         {
-            int count = markers.count(code);
+            int count = markers.getCount(index);
             if (count > best)
             {
-                selected = code;
+                selected = markers.getCode(index);
                 best = count;
             }
         }
@@ -77,33 +77,26 @@ public class MarkerCodeDetectionHandler implements MarkerDetectionHandler
         }
     }
 
-    protected Multiset<String> countMarkers(Collection<Marker> markers)
+    /**
+     * Add votes for the markers in this frame, and drop codes that weren't seen in it. Codes are
+     * voted for in place, so this doesn't create any objects for codes already seen.
+     */
+    protected MarkerVotes countMarkers(Collection<Marker> markers)
     {
-
-        final Collection<String> removals = new HashSet<>(markerCounts.elementSet());
-
+        markerCounts.startFrame();
         for (Marker marker : markers)
         {
-            final String markerCode = marker.toString();
-            final int count = markerCounts.count(markerCode);
-            if (count > MAX)
-            {
-                markerCounts.setCount(markerCode, MAX);
-            }
-
             //increase occurrence if this marker is already in the list.
             if (marker instanceof MarkerWithEmbeddedChecksum)
             {
-                markerCounts.add(markerCode, REQUIRED-1);
+                markerCounts.vote(marker, REQUIRED - 1, MAX);
             }
             else
             {
-                markerCounts.add(markerCode, OCCURRENCES);
+                markerCounts.vote(marker, OCCURRENCES, MAX);
             }
-            removals.remove(markerCode);
         }
-
-	    Multisets.removeOccurrences(markerCounts, removals);
+        markerCounts.endFrame();
 
         return markerCounts;
     }
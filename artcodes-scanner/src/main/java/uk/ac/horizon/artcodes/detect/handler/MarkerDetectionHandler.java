@@ -19,7 +19,6 @@
 
 package uk.ac.horizon.artcodes.detect.handler;
 
-import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Size;
 
@@ -28,10 +27,13 @@ import java.util.Collection;
 import java.util.List;
 
 import uk.ac.horizon.artcodes.detect.marker.Marker;
-import uk.ac.horizon.artcodes.model.Action;
-import uk.ac.horizon.artcodes.model.MarkerImage;
 
 public interface MarkerDetectionHandler
 {
-	void onMarkersDetected(Collection<Marker> markers, ArrayList<MatOfPoint> contours, Mat hierarchy, Size sourceImageSize);
+	/**
+	 * The contours and hierarchy are reused by the detector for the next frame, so they are only
+	 * valid until this returns. The hierarchy holds the [next, previous, first child, parent] of
+	 * contour i at [i * 4] to [i * 4 + 3].
+	 */
+	void onMarkersDetected(Collection<Marker> markers, ArrayList<MatOfPoint> contours, int[] hierarchy, Size sourceImageSize);
 }
@@ -0,0 +1,433 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.handler;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Follows markers from frame to frame, so that each printed marker keeps the same track id while
+ * it stays in view, even when several in view share a code.
+ * <p>
+ * Most of the time only one marker with a code is in view, and it is matched to the track for
+ * that code without looking at where it is. Bounds are only worked out to start a track, or when
+ * markers or tracks with the same code need telling apart, when each is matched to the track it overlaps
+ * most by intersection over union, or failing that to the nearest track whose centre is within
+ * the track's size. A track whose bounds weren't worked out when it was last seen matches the
+ * nearest marker left over. Markers that match no track start new ones, and tracks that aren't
+ * matched for more than a few frames end.
+ */
+public class MarkerTracker
+{
+	/**
+	 * Works out the bounds of a marker in the current frame.
+	 */
+	public interface BoundsSource
+	{
+		void getBounds(int markerIndex, Rect bounds);
+	}
+
+	/**
+	 * Takes the bounds of each marker from its outer contour.
+	 */
+	public static class ContourBounds implements BoundsSource
+	{
+		private List<MatOfPoint> contours;
+
+		public void setContours(List<MatOfPoint> contours)
+		{
+			this.contours = contours;
+		}
+
+		@Override
+		public void getBounds(int markerIndex, Rect bounds)
+		{
+			final Rect contourBounds = Imgproc.boundingRect(contours.get(markerIndex));
+			bounds.x = contourBounds.x;
+			bounds.y = contourBounds.y;
+			bounds.width = contourBounds.width;
+			bounds.height = contourBounds.height;
+		}
+	}
+
+	public static class Track
+	{
+		private final int id;
+		private final String code;
+		private final Rect bounds = new Rect();
+		// Whether the bounds were worked out in the frame the track was last seen
+		private boolean boundsCurrent = false;
+		private int markerIndex = -1;
+		private int framesSeen = 0;
+		private int framesMissed = 0;
+
+		private Track(int id, String code)
+		{
+			this.id = id;
+			this.code = code;
+		}
+
+		public int getId()
+		{
+			return id;
+		}
+
+		public String getCode()
+		{
+			return code;
+		}
+
+		/**
+		 * @return The index of the marker's contour in this frame, or -1 if it wasn't seen.
+		 */
+		public int getMarkerIndex()
+		{
+			return markerIndex;
+		}
+
+		/**
+		 * @return true if the track started in this frame.
+		 */
+		public boolean isNew()
+		{
+			return framesSeen == 1 && framesMissed == 0;
+		}
+
+		public int getFramesMissed()
+		{
+			return framesMissed;
+		}
+	}
+
+	private final double minOverlap;
+	private final int maxFramesMissed;
+	private final List<Track> tracks = new ArrayList<>();
+	private final List<Track> ended = new ArrayList<>();
+	private int nextId = 0;
+	private BoundsSource source;
+
+	// The markers in this frame
+	private int markerCount = 0;
+	private String[] markerCodes = new String[8];
+	private int[] markerIndexes = new int[8];
+	private Track[] markerTracks = new Track[8];
+	private Rect[] markerBounds = new Rect[8];
+
+	public MarkerTracker()
+	{
+		this(0.3, 5);
+	}
+
+	/**
+	 * @param minOverlap      The intersection over union needed to match a marker by overlap.
+	 * @param maxFramesMissed The number of frames a track can go unmatched before it ends.
+	 */
+	public MarkerTracker(double minOverlap, int maxFramesMissed)
+	{
+		this.minOverlap = minOverlap;
+		this.maxFramesMissed = maxFramesMissed;
+	}
+
+	/**
+	 * Start tracking a new frame.
+	 */
+	public void startFrame()
+	{
+		ended.clear();
+		source = null;
+		Arrays.fill(markerCodes, 0, markerCount, null);
+		Arrays.fill(markerTracks, 0, markerCount, null);
+		markerCount = 0;
+		for (Track track : tracks)
+		{
+			track.markerIndex = -1;
+		}
+	}
+
+	/**
+	 * Add a marker seen in this frame. Markers are matched to tracks by {@link #endFrame(BoundsSource)}.
+	 *
+	 * @param markerIndex The index of the marker's contour, so its track can be found with
+	 *                    {@link #getTrack(int)}.
+	 */
+	public void add(String code, int markerIndex)
+	{
+		if (markerCount == markerCodes.length)
+		{
+			final int capacity = markerCount * 2;
+			markerCodes = Arrays.copyOf(markerCodes, capacity);
+			markerIndexes = Arrays.copyOf(markerIndexes, capacity);
+			markerTracks = Arrays.copyOf(markerTracks, capacity);
+			markerBounds = Arrays.copyOf(markerBounds, capacity);
+		}
+		markerCodes[markerCount] = code;
+		markerIndexes[markerCount] = markerIndex;
+		markerCount++;
+	}
+
+	/**
+	 * Match the markers added in this frame to tracks, and end tracks that have gone unmatched for
+	 * too long.
+	 *
+	 * @param source Works out the bounds of markers when they're needed, until the next frame
+	 *               is started.
+	 */
+	public void endFrame(BoundsSource source)
+	{
+		this.source = source;
+		for (int marker = 0; marker < markerCount; marker++)
+		{
+			if (markerTracks[marker] == null)
+			{
+				matchCode(markerCodes[marker], marker);
+			}
+		}
+
+		int index = 0;
+		while (index < tracks.size())
+		{
+			final Track track = tracks.get(index);
+			if (track.markerIndex == -1 && ++track.framesMissed > maxFramesMissed)
+			{
+				ended.add(track);
+				tracks.set(index, tracks.get(tracks.size() - 1));
+				tracks.remove(tracks.size() - 1);
+			}
+			else
+			{
+				index++;
+			}
+		}
+	}
+
+	/**
+	 * @return The track matched to the marker with this contour index in this frame, or null.
+	 */
+	public Track getTrack(int markerIndex)
+	{
+		for (Track track : tracks)
+		{
+			if (track.markerIndex == markerIndex)
+			{
+				return track;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return Where the track's marker is in this frame, worked out if it hasn't been. The
+	 * returned rect is updated in place as the marker moves.
+	 */
+	public Rect getBounds(Track track)
+	{
+		if (track.markerIndex != -1 && !track.boundsCurrent && source != null)
+		{
+			source.getBounds(track.markerIndex, track.bounds);
+			track.boundsCurrent = true;
+		}
+		return track.bounds;
+	}
+
+	/**
+	 * @return The tracks, both those seen in this frame and those missed but not yet ended.
+	 */
+	public List<Track> getTracks()
+	{
+		return tracks;
+	}
+
+	/**
+	 * @return The tracks that ended in the last {@link #endFrame(BoundsSource)}.
+	 */
+	public List<Track> getEndedTracks()
+	{
+		return ended;
+	}
+
+	public void clear()
+	{
+		startFrame();
+		tracks.clear();
+	}
+
+	private void matchCode(String code, int firstMarker)
+	{
+		int codeMarkers = 0;
+		for (int marker = firstMarker; marker < markerCount; marker++)
+		{
+			if (markerCodes[marker].equals(code))
+			{
+				codeMarkers++;
+			}
+		}
+		int codeTracks = 0;
+		Track codeTrack = null;
+		for (Track track : tracks)
+		{
+			if (track.code.equals(code))
+			{
+				codeTracks++;
+				codeTrack = track;
+			}
+		}
+
+		if (codeMarkers == 1 && codeTracks <= 1)
+		{
+			// Nothing to tell apart, so the marker's bounds aren't needed, except to start a track
+			// with so that it can be told apart from markers with the same code that appear later
+			if (codeTrack == null)
+			{
+				codeTrack = new Track(nextId++, code);
+				tracks.add(codeTrack);
+				source.getBounds(markerIndexes[firstMarker], codeTrack.bounds);
+				codeTrack.boundsCurrent = true;
+			}
+			else
+			{
+				codeTrack.boundsCurrent = false;
+			}
+			match(codeTrack, firstMarker);
+			return;
+		}
+
+		for (int marker = firstMarker; marker < markerCount; marker++)
+		{
+			if (markerCodes[marker].equals(code))
+			{
+				if (markerBounds[marker] == null)
+				{
+					markerBounds[marker] = new Rect();
+				}
+				source.getBounds(markerIndexes[marker], markerBounds[marker]);
+			}
+		}
+
+		// Match the best scoring pair left until there are none
+		while (true)
+		{
+			Track bestTrack = null;
+			int bestMarker = -1;
+			double bestScore = 0;
+			for (Track track : tracks)
+			{
+				if (track.markerIndex != -1 || !track.code.equals(code))
+				{
+					continue;
+				}
+				for (int marker = firstMarker; marker < markerCount; marker++)
+				{
+					if (markerTracks[marker] == null && markerCodes[marker].equals(code))
+					{
+						final double score = getScore(track, markerBounds[marker]);
+						if (score > bestScore)
+						{
+							bestTrack = track;
+							bestMarker = marker;
+							bestScore = score;
+						}
+					}
+				}
+			}
+
+			if (bestTrack == null)
+			{
+				break;
+			}
+			setBounds(bestTrack, markerBounds[bestMarker]);
+			match(bestTrack, bestMarker);
+		}
+
+		for (int marker = firstMarker; marker < markerCount; marker++)
+		{
+			if (markerTracks[marker] == null && markerCodes[marker].equals(code))
+			{
+				final Track track = new Track(nextId++, code);
+				tracks.add(track);
+				setBounds(track, markerBounds[marker]);
+				match(track, marker);
+			}
+		}
+	}
+
+	private void match(Track track, int marker)
+	{
+		markerTracks[marker] = track;
+		track.markerIndex = markerIndexes[marker];
+		track.framesSeen++;
+		track.framesMissed = 0;
+	}
+
+	private static void setBounds(Track track, Rect bounds)
+	{
+		track.bounds.x = bounds.x;
+		track.bounds.y = bounds.y;
+		track.bounds.width = bounds.width;
+		track.bounds.height = bounds.height;
+		track.boundsCurrent = true;
+	}
+
+	/**
+	 * Any match by overlap scores above any match by distance, which scores above any match to a
+	 * track whose bounds are out of date.
+	 *
+	 * @return The score for matching the marker to the track, or 0 if they can't be matched.
+	 */
+	private double getScore(Track track, Rect bounds)
+	{
+		final double dx = (track.bounds.x + track.bounds.width / 2.0) - (bounds.x + bounds.width / 2.0);
+		final double dy = (track.bounds.y + track.bounds.height / 2.0) - (bounds.y + bounds.height / 2.0);
+		final double distance = Math.sqrt(dx * dx + dy * dy);
+		if (!track.boundsCurrent)
+		{
+			return 1 / (1 + distance);
+		}
+
+		final double overlap = getOverlap(track.bounds, bounds);
+		if (overlap >= minOverlap)
+		{
+			return 2 + overlap;
+		}
+
+		final double reach = Math.max(track.bounds.width, track.bounds.height);
+		if (distance >= reach)
+		{
+			return 0;
+		}
+		return 2 - (distance / reach);
+	}
+
+	private static double getOverlap(Rect a, Rect b)
+	{
+		final int width = Math.min(a.x + a.width, b.x + b.width) - Math.max(a.x, b.x);
+		final int height = Math.min(a.y + a.height, b.y + b.height) - Math.max(a.y, b.y);
+		if (width <= 0 || height <= 0)
+		{
+			return 0;
+		}
+		final double intersection = (double) width * height;
+		return intersection / ((double) a.width * a.height + (double) b.width * b.height - intersection);
+	}
+}
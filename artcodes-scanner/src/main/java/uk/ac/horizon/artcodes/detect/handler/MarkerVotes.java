@@ -0,0 +1,304 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.handler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.ac.horizon.artcodes.detect.marker.Marker;
+
+/**
+ * Votes for the marker codes seen in recent frames. Votes are kept in flat arrays keyed by
+ * {@link Marker#getPackedCode()}, and codes not seen in a frame lose a vote in place, being removed
+ * once they have none left, so counting the markers in a frame doesn't create any objects once
+ * their codes have been seen. Codes too
+ * long to pack fall back to keys looked up by their string.
+ * <p>
+ * Only a handful of codes are seen at once, so entries are found by scanning the keys rather
+ * than hashing.
+ * <p>
+ * Each frame is also compared with the one before: a code voted for is either new to this frame
+ * ({@link #hasAppeared(int)}) or persisted from the last, and the codes voted for in the last frame
+ * but not in this one have disappeared, even while they still have votes. If nothing appeared or disappeared and no count changed,
+ * {@link #hasChanged()} is false and anything worked out from the votes still holds.
+ */
+public class MarkerVotes
+{
+	private long[] keys = new long[16];
+	private String[] codes = new String[16];
+	private int[] counts = new int[16];
+	private boolean[] voted = new boolean[16];
+	private boolean[] votedLastFrame = new boolean[16];
+	private boolean[] appeared = new boolean[16];
+	private int size = 0;
+	private String[] disappeared = new String[16];
+	private int disappearedCount = 0;
+	private boolean changed = false;
+	private final Map<String, Long> unpackedKeys = new HashMap<>();
+	private long nextUnpackedKey = -1;
+
+	/**
+	 * Start counting a new frame.
+	 */
+	public void startFrame()
+	{
+		System.arraycopy(voted, 0, votedLastFrame, 0, size);
+		Arrays.fill(voted, 0, size, false);
+		Arrays.fill(appeared, 0, size, false);
+		Arrays.fill(disappeared, 0, disappearedCount, null);
+		disappearedCount = 0;
+		changed = false;
+	}
+
+	/**
+	 * Add votes for a marker seen in this frame.
+	 *
+	 * @param max Votes already counted are capped at this before the new votes are added.
+	 */
+	public void vote(Marker marker, int votes, int max)
+	{
+		long key = marker.getPackedCode();
+		if (key == Marker.UNPACKED)
+		{
+			key = getUnpackedKey(marker.toString(), true);
+		}
+		vote(key, marker, null, votes, max);
+	}
+
+	public void vote(String code, int votes, int max)
+	{
+		long key = Marker.packCode(code);
+		if (key == Marker.UNPACKED)
+		{
+			key = getUnpackedKey(code, true);
+		}
+		vote(key, null, code, votes, max);
+	}
+
+	private void vote(long key, Marker marker, String code, int votes, int max)
+	{
+		int index = indexOf(key);
+		if (index < 0)
+		{
+			index = add(key, code != null ? code : marker.toString());
+		}
+		if (!votedLastFrame[index])
+		{
+			appeared[index] = true;
+			changed = true;
+		}
+
+		final int count = Math.min(counts[index], max) + votes;
+		if (count != counts[index])
+		{
+			counts[index] = count;
+			changed = true;
+		}
+		voted[index] = true;
+	}
+
+	/**
+	 * Take a vote from every code that wasn't voted for since {@link #startFrame()}, so a marker
+	 * missed for a frame or two isn't forgotten. Codes with no votes left are removed.
+	 */
+	public void endFrame()
+	{
+		int index = 0;
+		while (index < size)
+		{
+			if (voted[index])
+			{
+				index++;
+				continue;
+			}
+
+			if (votedLastFrame[index])
+			{
+				if (disappearedCount == disappeared.length)
+				{
+					disappeared = Arrays.copyOf(disappeared, disappearedCount * 2);
+				}
+				disappeared[disappearedCount++] = codes[index];
+			}
+			changed = true;
+			counts[index]--;
+			if (counts[index] > 0)
+			{
+				index++;
+			}
+			else
+			{
+				if (keys[index] < 0)
+				{
+					unpackedKeys.remove(codes[index]);
+				}
+				size--;
+				keys[index] = keys[size];
+				codes[index] = codes[size];
+				counts[index] = counts[size];
+				voted[index] = voted[size];
+				votedLastFrame[index] = votedLastFrame[size];
+				appeared[index] = appeared[size];
+				codes[size] = null;
+			}
+		}
+	}
+
+	public int count(String code)
+	{
+		long key = Marker.packCode(code);
+		if (key == Marker.UNPACKED)
+		{
+			key = getUnpackedKey(code, false);
+		}
+		final int index = indexOf(key);
+		return index < 0 ? 0 : counts[index];
+	}
+
+	/**
+	 * @return The number of codes with votes. Codes and counts can be read by index, from 0 to
+	 * this.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public String getCode(int index)
+	{
+		return codes[index];
+	}
+
+	public int getCount(int index)
+	{
+		return counts[index];
+	}
+
+	/**
+	 * @return true if the code wasn't voted for in the frame before, false if it persisted.
+	 */
+	public boolean hasAppeared(int index)
+	{
+		return appeared[index];
+	}
+
+	/**
+	 * @return The number of codes voted for in the frame before but not in this one.
+	 */
+	public int getDisappearedCount()
+	{
+		return disappearedCount;
+	}
+
+	public String getDisappearedCode(int index)
+	{
+		return disappeared[index];
+	}
+
+	/**
+	 * @return true if a code appeared or disappeared in this frame.
+	 */
+	public boolean hasCodesChanged()
+	{
+		if (disappearedCount > 0)
+		{
+			return true;
+		}
+		for (int index = 0; index < size; index++)
+		{
+			if (appeared[index])
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if a code appeared or disappeared, or a count changed, in this frame.
+	 */
+	public boolean hasChanged()
+	{
+		return changed;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(codes, 0, size, null);
+		size = 0;
+		Arrays.fill(disappeared, 0, disappearedCount, null);
+		disappearedCount = 0;
+		unpackedKeys.clear();
+	}
+
+	private int indexOf(long key)
+	{
+		if (key == Marker.UNPACKED)
+		{
+			return -1;
+		}
+		for (int index = 0; index < size; index++)
+		{
+			if (keys[index] == key)
+			{
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private int add(long key, String code)
+	{
+		if (size == keys.length)
+		{
+			final int capacity = size * 2;
+			keys = Arrays.copyOf(keys, capacity);
+			codes = Arrays.copyOf(codes, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			voted = Arrays.copyOf(voted, capacity);
+			votedLastFrame = Arrays.copyOf(votedLastFrame, capacity);
+			appeared = Arrays.copyOf(appeared, capacity);
+		}
+		keys[size] = key;
+		codes[size] = code;
+		counts[size] = 0;
+		voted[size] = false;
+		votedLastFrame[size] = false;
+		appeared[size] = false;
+		return size++;
+	}
+
+	private long getUnpackedKey(String code, boolean create)
+	{
+		final Long key = unpackedKeys.get(code);
+		if (key != null)
+		{
+			return key;
+		}
+		else if (!create)
+		{
+			return Marker.UNPACKED;
+		}
+		final long newKey = nextUnpackedKey--;
+		unpackedKeys.put(code, newKey);
+		return newKey;
+	}
+}
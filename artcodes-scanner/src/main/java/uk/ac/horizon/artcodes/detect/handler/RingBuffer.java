@@ -0,0 +1,115 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.handler;
+
+import java.util.Arrays;
+
+/**
+ * A list with a fixed maximum length. Adding to a full list drops the oldest item, and items can
+ * be dropped from the start, without moving the others.
+ */
+public class RingBuffer<T>
+{
+	private final Object[] items;
+	private int start = 0;
+	private int size = 0;
+
+	public RingBuffer(int capacity)
+	{
+		if (capacity < 1)
+		{
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		}
+		this.items = new Object[capacity];
+	}
+
+	/**
+	 * Add an item to the end, dropping the oldest item if full.
+	 */
+	public void add(T item)
+	{
+		if (size == items.length)
+		{
+			items[start] = item;
+			start = (start + 1) % items.length;
+		}
+		else
+		{
+			items[(start + size) % items.length] = item;
+			size++;
+		}
+	}
+
+	/**
+	 * @param index From 0, the oldest item, to size() - 1, the newest.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int index)
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+		}
+		return (T) items[(start + index) % items.length];
+	}
+
+	/**
+	 * @return The newest item, or null if empty.
+	 */
+	public T getLast()
+	{
+		return size == 0 ? null : get(size - 1);
+	}
+
+	/**
+	 * Drop the oldest items, so that at most count are left.
+	 */
+	public void keepLast(int count)
+	{
+		while (size > Math.max(0, count))
+		{
+			items[start] = null;
+			start = (start + 1) % items.length;
+			size--;
+		}
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public int getCapacity()
+	{
+		return items.length;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(items, null);
+		start = 0;
+		size = 0;
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.handler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.horizon.artcodes.model.Action;
+import uk.ac.horizon.artcodes.model.Experience;
+
+/**
+ * The "sequence" actions of an experience, compiled into an Aho-Corasick automaton over marker
+ * codes. The automaton is advanced once for each code added to the detection history, and its
+ * state is the longest end of the history that is the start of (or all of) a sequence, so the
+ * sequence just completed and the longest sequence that could still be completed are known
+ * without searching the history.
+ * <p>
+ * Sequences need at least 2 codes, as a sequence of one code is matched as a single code.
+ */
+public class SequenceAutomaton
+{
+	private static class State
+	{
+		private final Map<String, State> next = new HashMap<>();
+		private final int length;
+		private State fail;
+		// The sequence action with exactly the codes leading to this state
+		private Action action;
+		// The longest sequence action that ends the codes leading to this state
+		private Action match;
+		// The longest sequence action that starts with, and is longer than, the codes leading to this state
+		private Action longest;
+
+		private State(int length)
+		{
+			this.length = length;
+		}
+	}
+
+	private final State root = new State(0);
+	private State state = root;
+	private int maxLength = 0;
+
+	public SequenceAutomaton(Experience experience)
+	{
+		for (Action action : experience.getActions())
+		{
+			if (action.getMatch() == Action.Match.sequence && action.getCodes().size() > 1)
+			{
+				add(action);
+			}
+		}
+
+		// Breadth first, so that the fail state of a state is complete before it is used
+		final List<State> queue = new ArrayList<>();
+		for (State child : root.next.values())
+		{
+			child.fail = root;
+			child.match = child.action;
+			queue.add(child);
+		}
+		for (int index = 0; index < queue.size(); index++)
+		{
+			final State parent = queue.get(index);
+			for (Map.Entry<String, State> entry : parent.next.entrySet())
+			{
+				final State child = entry.getValue();
+				child.fail = step(parent.fail, entry.getKey());
+				child.match = child.action != null ? child.action : child.fail.match;
+				queue.add(child);
+			}
+		}
+	}
+
+	private void add(Action action)
+	{
+		final int length = action.getCodes().size();
+		maxLength = Math.max(maxLength, length);
+		State current = root;
+		for (String code : action.getCodes())
+		{
+			if (current != root && (current.longest == null || current.longest.getCodes().size() < length))
+			{
+				current.longest = action;
+			}
+			State next = current.next.get(code);
+			if (next == null)
+			{
+				next = new State(current.length + 1);
+				current.next.put(code, next);
+			}
+			current = next;
+		}
+		current.action = action;
+	}
+
+	private State step(State from, String code)
+	{
+		State current = from;
+		while (current != root && !current.next.containsKey(code))
+		{
+			current = current.fail;
+		}
+		final State next = current.next.get(code);
+		return next == null ? root : next;
+	}
+
+	/**
+	 * Forget all codes added.
+	 */
+	public void reset()
+	{
+		state = root;
+	}
+
+	/**
+	 * Add the next code in the detection history.
+	 *
+	 * @return The number of codes at the end of the history that can still be part of a sequence.
+	 * Any codes before them can be removed from the history.
+	 */
+	public int next(String code)
+	{
+		state = step(state, code);
+		return state.length;
+	}
+
+	/**
+	 * @return The number of codes in the longest sequence, so the most history ever needed.
+	 */
+	public int getMaxLength()
+	{
+		return maxLength;
+	}
+
+	/**
+	 * @return The number of codes at the end of the history that can still be part of a sequence.
+	 */
+	public int getLength()
+	{
+		return state.length;
+	}
+
+	/**
+	 * @return The longest sequence action completed by the end of the history, or null.
+	 */
+	public Action getMatch()
+	{
+		return state.match;
+	}
+
+	/**
+	 * Find the sequence action that the history could be about to complete, starting with the
+	 * longest end of the history that begins a sequence.
+	 *
+	 * @param minimumLength The minimum number of codes in the action.
+	 * @return The longest such action with at least the minimum number of codes, or null.
+	 */
+	public Action getPossibleAction(int minimumLength)
+	{
+		for (State current = state; current != root; current = current.fail)
+		{
+			if (current.longest != null && current.longest.getCodes().size() >= minimumLength)
+			{
+				return current.longest;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.marker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import uk.ac.horizon.artcodes.model.Action;
+import uk.ac.horizon.artcodes.model.Experience;
+
+/**
+ * The valid codes of an experience, compiled once so that a marker candidate can be rejected as
+ * soon as the regions collected so far can no longer be part of any valid code.
+ * <p>
+ * Every code is treated as a multiset of region values. For each region value and occurrence
+ * count there is a bitset of the codes that contain at least that many regions of that value. A
+ * candidate starts with every code set and, as each region is added, is intersected with the
+ * bitset for that region's value and count. Once the intersection is empty no valid code can be
+ * completed. A complete candidate is valid if it still shares a code with the codes of its length.
+ * <p>
+ * If the experience has no codes every candidate is accepted.
+ */
+public class CodeAutomaton
+{
+	private final Set<String> codes = new LinkedHashSet<>();
+	private final int minRegions;
+	private final int maxRegions;
+	private final int maxRegionValue;
+	private final int maxEmptyRegions;
+	private final int checksum;
+	private final int words;
+	// atLeast[value][n - 1] is the set of codes with at least n regions of value
+	private final long[][][] atLeast;
+	// ofLength[n] is the set of codes with exactly n regions
+	private final long[][] ofLength;
+
+	public CodeAutomaton(Experience experience)
+	{
+		int maxValue = 3;
+		int minRegionCount = 20;
+		int maxRegionCount = 3;
+		int checksum = 0;
+		int maxEmptyRegions = 0;
+		final List<int[]> compiled = new ArrayList<>();
+		for (Action action : experience.getActions())
+		{
+			for (String code : action.getCodes())
+			{
+				int total = 0;
+				String[] values = code.split(":");
+				minRegionCount = Math.min(minRegionCount, values.length);
+				maxRegionCount = Math.max(maxRegionCount, values.length);
+				int emptyRegions = 0;
+				boolean parsed = true;
+				final int[] codeValues = new int[values.length];
+				for (int index = 0; index < values.length; index++)
+				{
+					try
+					{
+						int codeValue = Integer.parseInt(values[index]);
+						maxValue = Math.max(maxValue, codeValue);
+						total += codeValue;
+						if (codeValue == 0)
+						{
+							++emptyRegions;
+						}
+						codeValues[index] = codeValue;
+					}
+					catch (NumberFormatException e)
+					{
+						// A code with a value that isn't a number can never be detected
+						parsed = false;
+					}
+				}
+				maxEmptyRegions = Math.max(maxEmptyRegions, emptyRegions);
+
+				if (total > 0)
+				{
+					checksum = gcd(checksum, total);
+				}
+
+				if (codes.add(code) && parsed)
+				{
+					compiled.add(codeValues);
+				}
+			}
+		}
+
+		if (minRegionCount == 20 && maxRegionCount == 3)
+		{
+			minRegionCount = 3;
+			maxRegionCount = 20;
+			maxValue = 20;
+		}
+
+		this.maxRegionValue = maxValue;
+		this.minRegions = minRegionCount;
+		this.maxRegions = maxRegionCount;
+		this.checksum = checksum;
+		this.maxEmptyRegions = maxEmptyRegions;
+
+		this.words = (compiled.size() + 63) / 64;
+		this.atLeast = new long[maxValue + 1][][];
+		this.ofLength = new long[maxRegionCount + 1][];
+		for (int codeIndex = 0; codeIndex < compiled.size(); codeIndex++)
+		{
+			final int[] codeValues = compiled.get(codeIndex);
+			final int word = codeIndex / 64;
+			final long bit = 1L << (codeIndex % 64);
+			final int[] occurrences = new int[maxValue + 1];
+			boolean valid = true;
+			for (int value : codeValues)
+			{
+				if (value < 0)
+				{
+					valid = false;
+					break;
+				}
+				occurrences[value]++;
+			}
+
+			if (!valid)
+			{
+				continue;
+			}
+
+			for (int value = 0; value <= maxValue; value++)
+			{
+				for (int occurrence = 1; occurrence <= occurrences[value]; occurrence++)
+				{
+					if (atLeast[value] == null)
+					{
+						atLeast[value] = new long[maxRegionCount][];
+					}
+					if (atLeast[value][occurrence - 1] == null)
+					{
+						atLeast[value][occurrence - 1] = new long[words];
+					}
+					atLeast[value][occurrence - 1][word] |= bit;
+				}
+			}
+
+			if (ofLength[codeValues.length] == null)
+			{
+				ofLength[codeValues.length] = new long[words];
+			}
+			ofLength[codeValues.length][word] |= bit;
+		}
+	}
+
+	private static int gcd(int a, int b)
+	{
+		if (b == 0)
+		{
+			return a;
+		}
+		return gcd(b, a % b);
+	}
+
+	public Set<String> getCodes()
+	{
+		return Collections.unmodifiableSet(codes);
+	}
+
+	public int getMinRegions()
+	{
+		return minRegions;
+	}
+
+	public int getMaxRegions()
+	{
+		return maxRegions;
+	}
+
+	public int getMaxRegionValue()
+	{
+		return maxRegionValue;
+	}
+
+	public int getMaxEmptyRegions()
+	{
+		return maxEmptyRegions;
+	}
+
+	public int getChecksum()
+	{
+		return checksum;
+	}
+
+	/**
+	 * @return true if there are no codes to validate against, so any marker is accepted.
+	 */
+	public boolean isUnrestricted()
+	{
+		return codes.isEmpty();
+	}
+
+	/**
+	 * Create a candidate set to be used with {@link #reset(long[])}, {@link #accept(long[], int, int)}
+	 * and {@link #matches(long[], int)}. A candidate set can be reused for any number of markers.
+	 */
+	public long[] createCandidates()
+	{
+		return new long[words];
+	}
+
+	/**
+	 * Start a new marker, with every code as a candidate.
+	 */
+	public void reset(long[] candidates)
+	{
+		Arrays.fill(candidates, -1L);
+	}
+
+	/**
+	 * Add a region to the marker.
+	 *
+	 * @param value      The value of the region.
+	 * @param occurrence The number of regions with this value in the marker, including this one.
+	 * @return false if no valid code can be completed with the regions added so far.
+	 */
+	public boolean accept(long[] candidates, int value, int occurrence)
+	{
+		if (isUnrestricted())
+		{
+			return true;
+		}
+		else if (value < 0 || value > maxRegionValue || occurrence > maxRegions || atLeast[value] == null)
+		{
+			return false;
+		}
+
+		final long[] codesWithValue = atLeast[value][occurrence - 1];
+		if (codesWithValue == null)
+		{
+			return false;
+		}
+
+		long remaining = 0;
+		for (int word = 0; word < words; word++)
+		{
+			candidates[word] &= codesWithValue[word];
+			remaining |= candidates[word];
+		}
+		return remaining != 0;
+	}
+
+	/**
+	 * @param regionCount The number of regions added to the marker.
+	 * @return true if the regions added make up a valid code.
+	 */
+	public boolean matches(long[] candidates, int regionCount)
+	{
+		if (isUnrestricted())
+		{
+			return true;
+		}
+		else if (regionCount < 0 || regionCount > maxRegions || ofLength[regionCount] == null)
+		{
+			return false;
+		}
+
+		final long[] codesOfLength = ofLength[regionCount];
+		for (int word = 0; word < words; word++)
+		{
+			if ((candidates[word] & codesOfLength[word]) != 0)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -23,8 +23,18 @@ import java.util.List;
 
 public class Marker
 {
+	/**
+	 * Returned by {@link #packCode(String)} for codes that can't be packed into a long.
+	 */
+	public static final long UNPACKED = 0;
+
+	private static final int BITS_PER_REGION = 5;
+	private static final int MAX_PACKED_REGIONS = Long.SIZE / BITS_PER_REGION;
+	private static final int MAX_PACKED_VALUE = (1 << BITS_PER_REGION) - 2;
+
 	public final int markerIndex;
 	public final List<MarkerRegion> regions;
+	private long packedCode = -1;
 
 	public Marker(int markerIndex, List<MarkerRegion> regions)
 	{
@@ -56,6 +66,77 @@ public class Marker
 		return this.cashedToString;
 	}
 
+	/**
+	 * @return The code packed into a long, so it can be compared and looked up without creating
+	 * a string, or {@link #UNPACKED} if it can't be. The same code always packs to the same value
+	 * as {@link #packCode(String)}.
+	 */
+	public long getPackedCode()
+	{
+		if (packedCode == -1)
+		{
+			final int count = regions.size();
+			long packed = UNPACKED;
+			if (count <= MAX_PACKED_REGIONS)
+			{
+				for (int index = 0; index < count; index++)
+				{
+					final int value = regions.get(index).value;
+					if (value < 0 || value > MAX_PACKED_VALUE)
+					{
+						packed = UNPACKED;
+						break;
+					}
+					packed = (packed << BITS_PER_REGION) | (value + 1);
+				}
+			}
+			packedCode = packed;
+		}
+		return packedCode;
+	}
+
+	/**
+	 * Pack a code string, such as "1:1:2:4", into a long without creating any objects. Each region
+	 * value, plus one, takes five bits, so codes of up to 12 regions with values up to 30 can be
+	 * packed.
+	 *
+	 * @return The packed code, or {@link #UNPACKED} if the code is too long or isn't valid.
+	 */
+	public static long packCode(String code)
+	{
+		long packed = UNPACKED;
+		int regions = 0;
+		int value = -1;
+		final int length = code.length();
+		for (int index = 0; index <= length; index++)
+		{
+			final char character = index < length ? code.charAt(index) : ':';
+			if (character == ':')
+			{
+				if (value < 0 || ++regions > MAX_PACKED_REGIONS)
+				{
+					return UNPACKED;
+				}
+				packed = (packed << BITS_PER_REGION) | (value + 1);
+				value = -1;
+			}
+			else if (character >= '0' && character <= '9' && value != 0)
+			{
+				// A leading zero would make a different string with the same packed value
+				value = (value < 0 ? 0 : value * 10) + (character - '0');
+				if (value > MAX_PACKED_VALUE)
+				{
+					return UNPACKED;
+				}
+			}
+			else
+			{
+				return UNPACKED;
+			}
+		}
+		return packed;
+	}
+
 	@Override
 	public boolean equals(Object o)
 	{
@@ -19,9 +19,6 @@
 
 package uk.ac.horizon.artcodes.detect.marker;
 
-import android.content.Context;
-
-import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.imgproc.Imgproc;
 
@@ -33,6 +30,7 @@ import uk.ac.horizon.artcodes.detect.handler.MarkerDetectionHandler;
 import uk.ac.horizon.artcodes.model.Experience;
 import uk.ac.horizon.artcodes.process.ImageProcessor;
 import uk.ac.horizon.artcodes.process.ImageProcessorFactory;
+import uk.ac.horizon.artcodes.process.ProcessorConfig;
 
 public class MarkerAreaOrderDetector extends MarkerDetector
 {
@@ -43,38 +41,42 @@ public class MarkerAreaOrderDetector extends MarkerDetector
 			return "detectOrdered";
 		}
 
-		public ImageProcessor create(Context context, Experience experience, MarkerDetectionHandler handler)
+		public ImageProcessor create(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config)
 		{
-			return new MarkerAreaOrderDetector(context, experience, handler);
+			return new MarkerAreaOrderDetector(experience, handler, config);
 		}
 	}
 
-	public MarkerAreaOrderDetector(Context context, Experience experience, MarkerDetectionHandler handler)
+	public MarkerAreaOrderDetector(Experience experience, MarkerDetectionHandler handler)
 	{
-		super(context, experience, handler);
+		this(experience, handler, new ProcessorConfig("detectOrdered"));
 	}
 
-	@Override
-	protected MarkerRegion createRegionForNode(int regionIndex, List<MatOfPoint> contours, Mat hierarchy)
+	public MarkerAreaOrderDetector(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config)
+	{
+		super(experience, handler, config);
+	}
+
+	private static final Comparator<MarkerRegion> AREA_ORDER = new Comparator<MarkerRegion>()
 	{
-		MarkerRegion region = super.createRegionForNode(regionIndex, contours, hierarchy);
-		if (region != null)
+		@Override
+		public int compare(MarkerRegion region1, MarkerRegion region2)
 		{
-			region.data = Imgproc.contourArea(contours.get(region.index));
+			return Double.compare((Double) region1.data, (Double) region2.data);
 		}
+	};
+
+	@Override
+	protected MarkerRegion createRegion(int regionIndex, int value, List<MatOfPoint> contours)
+	{
+		MarkerRegion region = super.createRegion(regionIndex, value, contours);
+		region.data = Imgproc.contourArea(contours.get(region.index));
 		return region;
 	}
 
 	@Override
 	protected void sortCode(Marker marker)
 	{
-		Collections.sort(marker.regions, new Comparator<MarkerRegion>()
-		{
-			@Override
-			public int compare(MarkerRegion region1, MarkerRegion region2)
-			{
-				return Double.compare((Double) region1.data, (Double) region2.data);
-			}
-		});
+		Collections.sort(marker.regions, AREA_ORDER);
 	}
 }
\ No newline at end of file
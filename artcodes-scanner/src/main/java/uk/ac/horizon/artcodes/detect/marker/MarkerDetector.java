@@ -19,9 +19,6 @@
 
 package uk.ac.horizon.artcodes.detect.marker;
 
-import android.content.Context;
-import android.util.Log;
-
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
@@ -30,21 +27,20 @@ import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
 
-import uk.ac.horizon.artcodes.Feature;
 import uk.ac.horizon.artcodes.detect.DetectorSetting;
+import uk.ac.horizon.artcodes.detect.DetectorStats;
 import uk.ac.horizon.artcodes.detect.ImageBuffers;
 import uk.ac.horizon.artcodes.detect.handler.MarkerDetectionHandler;
-import uk.ac.horizon.artcodes.model.Action;
 import uk.ac.horizon.artcodes.model.Experience;
 import uk.ac.horizon.artcodes.process.ImageProcessor;
 import uk.ac.horizon.artcodes.process.ImageProcessorFactory;
-import uk.ac.horizon.artcodes.scanner.R;
+import uk.ac.horizon.artcodes.process.ProcessorConfig;
 
 public class MarkerDetector implements ImageProcessor
 {
@@ -56,9 +52,9 @@ public class MarkerDetector implements ImageProcessor
 			return "detect";
 		}
 
-		public ImageProcessor create(Context context, Experience experience, MarkerDetectionHandler handler)
+		public ImageProcessor create(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config)
 		{
-			return new MarkerDetector(context, experience, handler);
+			return new MarkerDetector(experience, handler, config);
 		}
 	}
 
@@ -86,13 +82,23 @@ public class MarkerDetector implements ImageProcessor
 		}
 	}
 
+	private static final Comparator<MarkerRegion> VALUE_ORDER = new Comparator<MarkerRegion>()
+	{
+		@Override
+		public int compare(MarkerRegion region1, MarkerRegion region2)
+		{
+			return region1.value < region2.value ? -1 : (region1.value == region2.value ? 0 : 1);
+		}
+	};
+
 	static final int NEXT_NODE = 0;
 	static final int FIRST_NODE = 2;
 	private static final Scalar detectedColour = new Scalar(255, 255, 0, 255);
 	private static final Scalar regionColour = new Scalar(255, 128, 0, 255);
 	private static final Scalar outlineColour = new Scalar(0, 0, 0, 255);
 	protected final int checksum;
-	protected final Collection<String> validCodes = new HashSet<>();
+	protected final Collection<String> validCodes;
+	protected final CodeAutomaton automaton;
 	protected final int minRegions;
 	protected final int maxRegions;
 	protected final int maxRegionValue;
@@ -100,162 +106,117 @@ public class MarkerDetector implements ImageProcessor
 	protected final boolean ignoreEmptyRegions;
 
 	private final MarkerDetectionHandler handler;
+	private final long[] candidates;
+	private final int[] valueCounts;
+	private final int[] regionIndexes;
+	private final int[] regionValues;
+	protected int regionCount;
+	protected int regionTotal;
 
 	private CodeDisplay codeDisplay = CodeDisplay.hidden;
 	private OutlineDisplay outlineDisplay = OutlineDisplay.none;
 
-	private Context context;
-
-	public MarkerDetector(Context context, Experience experience, MarkerDetectionHandler handler)
+	public MarkerDetector(Experience experience, MarkerDetectionHandler handler)
 	{
-		this.context = context;
-		int maxValue = 3;
-		int minRegionCount = 20;
-		int maxRegionCount = 3;
-		int checksum = 0;
-		int maxEmptyRegions = 0;
-		for (Action action : experience.getActions())
-		{
-			for (String code : action.getCodes())
-			{
-				int total = 0;
-				String[] values = code.split(":");
-				minRegionCount = Math.min(minRegionCount, values.length);
-				maxRegionCount = Math.max(maxRegionCount, values.length);
-				int emptyRegions = 0;
-				for (String value : values)
-				{
-					try
-					{
-						int codeValue = Integer.parseInt(value);
-						maxValue = Math.max(maxValue, codeValue);
-						total += codeValue;
-						if (codeValue == 0)
-						{
-							++emptyRegions;
-						}
-					}
-					catch (Exception e)
-					{
-						Log.w("", e.getMessage(), e);
-					}
-				}
-				maxEmptyRegions = Math.max(maxEmptyRegions, emptyRegions);
-
-				if (total > 0)
-				{
-					checksum = gcd(checksum, total);
-				}
-
-				validCodes.add(code);
-			}
-		}
-
-		this.handler = handler;
-
-		if (minRegionCount == 20 && maxRegionCount == 3)
-		{
-			minRegionCount = 3;
-			maxRegionCount = 20;
-			maxValue = 20;
-		}
-
-		this.maxRegionValue = maxValue;
-		this.minRegions = minRegionCount;
-		this.maxRegions = maxRegionCount;
-		this.checksum = checksum;
-		this.maxEmptyRegions = maxEmptyRegions;
-		this.ignoreEmptyRegions = maxEmptyRegions == 0;
-		Log.i("detect", "Regions " + minRegionCount + "-" + maxRegionCount + ", <" + maxValue + ", checksum " + checksum);
+		this(experience, handler, new ProcessorConfig("detect"));
 	}
 
-	private static int gcd(int a, int b)
+	/**
+	 * @param config Parameters from the pipeline entry: checksum overrides the checksum worked
+	 *               out from the experience's codes, where 0 turns the check off.
+	 */
+	public MarkerDetector(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config)
 	{
-		if (b == 0)
-		{
-			return a;
-		}
-		return gcd(b, a % b);
+		this.handler = handler;
+		this.automaton = new CodeAutomaton(experience);
+		this.validCodes = automaton.getCodes();
+		this.maxRegionValue = automaton.getMaxRegionValue();
+		this.minRegions = automaton.getMinRegions();
+		this.maxRegions = automaton.getMaxRegions();
+		this.checksum = config.getInt("checksum", automaton.getChecksum(), 0, 1000);
+		this.maxEmptyRegions = automaton.getMaxEmptyRegions();
+		this.ignoreEmptyRegions = maxEmptyRegions == 0;
+		this.candidates = automaton.createCandidates();
+		this.valueCounts = new int[maxRegionValue + 1];
+		this.regionIndexes = new int[maxRegions];
+		this.regionValues = new int[maxRegions];
 	}
 
 	@Override
 	public void process(ImageBuffers buffers)
 	{
-		final ArrayList<MatOfPoint> contours = new ArrayList<>();
-		final Mat hierarchy = new Mat();
 		// Make sure the image is rotated before the contours are generated, if necessary
-		if (Feature.get(this.context, R.bool.feature_combined_markers).isEnabled() || outlineDisplay != OutlineDisplay.none || codeDisplay == CodeDisplay.visible)
+		if (buffers.isRotatedForDetection() || outlineDisplay != OutlineDisplay.none || codeDisplay == CodeDisplay.visible)
 		{
 			buffers.getOverlay();
 		}
-		try
+
+		// Other detectors in the pipeline may already have found the contours in this frame
+		final List<Marker> foundMarkers = new ArrayList<>();
+		final ArrayList<MatOfPoint> contours = buffers.getContours();
+		final int[] nodes = buffers.getHierarchyNodes();
+		int rejected = 0;
+		for (int i = 0; i < contours.size(); i++)
 		{
-			final List<Marker> foundMarkers = new ArrayList<>();
-			Imgproc.findContours(buffers.getImage(), contours, hierarchy, Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_NONE);
-			for (int i = 0; i < contours.size(); i++)
+			final Marker marker = createMarkerForNode(i, contours, nodes);
+			if (marker == null)
 			{
-				final Marker marker = createMarkerForNode(i, contours, hierarchy);
-				if (marker != null)
+				if (regionCount > 0)
 				{
-					final String markerCode = getCodeKey(marker);
-					if (validCodes.isEmpty() || validCodes.contains(markerCode))
-					{
-						foundMarkers.add(marker);
+					rejected++;
+				}
+			}
+			else
+			{
+				final String markerCode = marker.toString();
+				if (!validCodes.isEmpty() && !validCodes.contains(markerCode))
+				{
+					rejected++;
+				}
+				else
+				{
+					foundMarkers.add(marker);
 
-						if (outlineDisplay != OutlineDisplay.none)
+					if (outlineDisplay != OutlineDisplay.none)
+					{
+						Mat overlay = buffers.getOverlay();
+						if (outlineDisplay == OutlineDisplay.regions)
 						{
-							Mat overlay = buffers.getOverlay();
-							if (outlineDisplay == OutlineDisplay.regions)
-							{
-								double[] nodes = hierarchy.get(0, i);
-								int currentRegionIndex = (int) nodes[FIRST_NODE];
+							int currentRegionIndex = nodes[i * 4 + FIRST_NODE];
 
-								while (currentRegionIndex >= 0)
-								{
-									Imgproc.drawContours(overlay, contours, currentRegionIndex, outlineColour, 4);
-									Imgproc.drawContours(overlay, contours, currentRegionIndex, regionColour, 2);
+							while (currentRegionIndex >= 0)
+							{
+								Imgproc.drawContours(overlay, contours, currentRegionIndex, outlineColour, 4);
+								Imgproc.drawContours(overlay, contours, currentRegionIndex, regionColour, 2);
 
-									nodes = hierarchy.get(0, currentRegionIndex);
-									currentRegionIndex = (int) nodes[NEXT_NODE];
-								}
+								currentRegionIndex = nodes[currentRegionIndex * 4 + NEXT_NODE];
 							}
-
-							Imgproc.drawContours(overlay, contours, i, outlineColour, 7);
-							Imgproc.drawContours(overlay, contours, i, detectedColour, 5);
 						}
 
-						if (codeDisplay == CodeDisplay.visible)
-						{
-							Mat overlay = buffers.getOverlay();
-							Rect bounds = Imgproc.boundingRect(contours.get(i));
-							Imgproc.putText(overlay, markerCode, bounds.tl(), Core.FONT_HERSHEY_SIMPLEX, 1, outlineColour, 5);
-							Imgproc.putText(overlay, markerCode, bounds.tl(), Core.FONT_HERSHEY_SIMPLEX, 1, detectedColour, 3);
-						}
+						Imgproc.drawContours(overlay, contours, i, outlineColour, 7);
+						Imgproc.drawContours(overlay, contours, i, detectedColour, 5);
+					}
+
+					if (codeDisplay == CodeDisplay.visible)
+					{
+						Mat overlay = buffers.getOverlay();
+						Rect bounds = Imgproc.boundingRect(contours.get(i));
+						Imgproc.putText(overlay, markerCode, bounds.tl(), Core.FONT_HERSHEY_SIMPLEX, 1, outlineColour, 5);
+						Imgproc.putText(overlay, markerCode, bounds.tl(), Core.FONT_HERSHEY_SIMPLEX, 1, detectedColour, 3);
 					}
 				}
 			}
-
-			buffers.setDetected(!foundMarkers.isEmpty());
-			handler.onMarkersDetected(foundMarkers, contours, hierarchy, buffers.getImage().size());
-		}
-		finally
-		{
-			contours.clear();
-			hierarchy.release();
 		}
-	}
 
-	public String getCodeKey(Marker marker)
-	{
-		sortCode(marker);
-		StringBuilder builder = new StringBuilder(marker.regions.size() * 2);
-		for (MarkerRegion region : marker.regions)
+		final DetectorStats stats = buffers.getStats();
+		if (stats != null)
 		{
-			builder.append(region.value);
-			builder.append(':');
+			stats.addCandidatesRejected(rejected);
+			stats.addMarkersFound(foundMarkers.size());
 		}
-		builder.deleteCharAt(builder.length() - 1);
-		return builder.toString();
+
+		buffers.setDetected(!foundMarkers.isEmpty());
+		handler.onMarkersDetected(foundMarkers, contours, buffers.getHierarchyNodes(), buffers.getImage().size());
 	}
 
 	@Override
@@ -270,34 +231,15 @@ public class MarkerDetector implements ImageProcessor
 			}
 
 			@Override
-			public int getIcon()
+			public String getName()
 			{
-				switch (outlineDisplay)
-				{
-					case none:
-						return R.drawable.ic_border_clear_24dp;
-					case marker:
-						return R.drawable.ic_border_outer_24dp;
-					case regions:
-						return R.drawable.ic_border_all_24dp;
-				}
-
-				return 0;
+				return "outline";
 			}
 
 			@Override
-			public int getText()
+			public String getValue()
 			{
-				switch (outlineDisplay)
-				{
-					case none:
-						return R.string.draw_marker_off;
-					case marker:
-						return R.string.draw_marker_outline;
-					case regions:
-						return R.string.draw_marker_regions;
-				}
-				return 0;
+				return outlineDisplay.name();
 			}
 		});
 		settings.add(new DetectorSetting()
@@ -309,167 +251,194 @@ public class MarkerDetector implements ImageProcessor
 			}
 
 			@Override
-			public int getIcon()
+			public String getName()
 			{
-				switch (codeDisplay)
-				{
-					case hidden:
-						return R.drawable.ic_filter_none_black_24dp;
-					case visible:
-						return R.drawable.ic_filter_1_black_24dp;
-				}
-				return 0;
+				return "code";
 			}
 
 			@Override
-			public int getText()
+			public String getValue()
 			{
-				switch (codeDisplay)
-				{
-					case hidden:
-						return R.string.draw_code_off;
-					case visible:
-						return R.string.draw_code;
-				}
-
-				return 0;
+				return codeDisplay.name();
 			}
 		});
 	}
 
-	protected boolean isValidDot(int nodeIndex, Mat hierarchy)
+	@Override
+	public void reset()
 	{
-		double[] nodes = hierarchy.get(0, nodeIndex);
-		return nodes[FIRST_NODE] < 0;
+		codeDisplay = CodeDisplay.hidden;
+		outlineDisplay = OutlineDisplay.none;
 	}
 
-	protected Marker createMarkerForNode(int nodeIndex, List<MatOfPoint> contours, Mat hierarchy)
+	@Override
+	public void close()
 	{
-		List<MarkerRegion> regions = null;
-		for (int currentNodeIndex = (int) hierarchy.get(0, nodeIndex)[FIRST_NODE]; currentNodeIndex >= 0; currentNodeIndex = (int) hierarchy.get(0, currentNodeIndex)[NEXT_NODE])
+	}
+
+	protected boolean isValidDot(int nodeIndex, int[] nodes)
+	{
+		return nodes[nodeIndex * 4 + FIRST_NODE] < 0;
+	}
+
+	protected Marker createMarkerForNode(int nodeIndex, List<MatOfPoint> contours, int[] nodes)
+	{
+		startCandidate();
+		for (int currentNodeIndex = nodes[nodeIndex * 4 + FIRST_NODE]; currentNodeIndex >= 0; currentNodeIndex = nodes[currentNodeIndex * 4 + NEXT_NODE])
 		{
-			final MarkerRegion region = createRegionForNode(currentNodeIndex, contours, hierarchy);
-			if (region != null)
+			final int value = getRegionValue(currentNodeIndex, nodes);
+			if (value < 0)
 			{
-				if (this.ignoreEmptyRegions && region.value == 0)
-				{
-					continue;
-				}
-				else if (regions == null)
-				{
-					regions = new ArrayList<>();
-				}
-				else if (regions.size() >= maxRegions)
-				{
-					return null;
-				}
-
-				regions.add(region);
+				return null;
 			}
-			else
+			else if (this.ignoreEmptyRegions && value == 0)
+			{
+				continue;
+			}
+			else if (regionCount >= maxRegions)
 			{
 				return null;
 			}
+
+			if (!acceptRegion(currentNodeIndex, value))
+			{
+				return null; // Can't be part of a valid code
+			}
 		}
 
-		if (regions != null)
+		if (regionCount > 0 && isValidCandidate())
 		{
-			Marker marker = new Marker(nodeIndex, regions);
+			Marker marker = new Marker(nodeIndex, createRegions(contours));
 			sortCode(marker);
-			if (isValidRegionList(marker))
-			{
-				return marker;
-			}
+			return marker;
 		}
 
 		return null;
 	}
 
-	protected MarkerRegion createRegionForNode(int regionIndex, List<MatOfPoint> contours, Mat hierarchy)
+	/**
+	 * @return the number of dots in the region, or -1 if the node isn't a valid region.
+	 */
+	protected int getRegionValue(int regionIndex, int[] nodes)
 	{
 		// Find the first dot index:
-		double[] nodes = hierarchy.get(0, regionIndex);
-		int currentNodeIndex = (int) nodes[FIRST_NODE];
+		int currentNodeIndex = nodes[regionIndex * 4 + FIRST_NODE];
 		if (currentNodeIndex < 0 && !(this.ignoreEmptyRegions || this.maxEmptyRegions > 0))
 		{
-			return null; // There are no dots in this region, and empty regions are not allowed.
+			return -1; // There are no dots in this region, and empty regions are not allowed.
 		}
 
 		// Count all the dots and check if they are leaf nodes in the hierarchy:
 		int dotCount = 0;
 		while (currentNodeIndex >= 0)
 		{
-			if (isValidDot(currentNodeIndex, hierarchy))
+			if (isValidDot(currentNodeIndex, nodes))
 			{
 				dotCount++;
 				// Get next dot node:
-				nodes = hierarchy.get(0, currentNodeIndex);
-				currentNodeIndex = (int) nodes[NEXT_NODE];
+				currentNodeIndex = nodes[currentNodeIndex * 4 + NEXT_NODE];
 
 				if (dotCount > maxRegionValue)
 				{
 					// Too many dots
-					return null;
+					return -1;
 				}
 			}
 			else
 			{
 				// Not a dot
-				return null;
+				return -1;
 			}
 		}
 
-		return new MarkerRegion(regionIndex, dotCount);
+		return dotCount;
 	}
 
 	/**
-	 * Override this method to change the sorted order of the code.
+	 * Create the region objects for a marker once its candidate has been validated.
 	 */
-	protected void sortCode(Marker marker)
+	protected List<MarkerRegion> createRegions(List<MatOfPoint> contours)
 	{
-		Collections.sort(marker.regions, new Comparator<MarkerRegion>()
+		final List<MarkerRegion> regions = new ArrayList<>(regionCount);
+		for (int index = 0; index < regionCount; index++)
 		{
-			@Override
-			public int compare(MarkerRegion region1, MarkerRegion region2)
-			{
-				return region1.value < region2.value ? -1 : (region1.value == region2.value ? 0 : 1);
-			}
-		});
+			regions.add(createRegion(regionIndexes[index], regionValues[index], contours));
+		}
+		return regions;
+	}
+
+	protected MarkerRegion createRegion(int regionIndex, int value, List<MatOfPoint> contours)
+	{
+		return new MarkerRegion(regionIndex, value);
 	}
 
 	/**
-	 * Override this method to change validation method.
+	 * Start collecting the regions of a new marker candidate.
 	 */
-	protected boolean isValidRegionList(Marker marker)
+	protected void startCandidate()
 	{
-		if (marker.regions == null)
+		automaton.reset(candidates);
+		Arrays.fill(valueCounts, 0);
+		regionCount = 0;
+		regionTotal = 0;
+	}
+
+	/**
+	 * Add a region to the current marker candidate, keeping running totals for validation.
+	 *
+	 * @return false if the regions collected so far can't complete any valid code.
+	 */
+	protected boolean acceptRegion(int regionIndex, int value)
+	{
+		final int occurrence = ++valueCounts[value];
+		if (value == 0 && occurrence > maxEmptyRegions)
 		{
-			return false; // No CodeDisplay
+			return false; // too many empty regions
 		}
-		else if (marker.regions.size() < minRegions)
+
+		regionIndexes[regionCount] = regionIndex;
+		regionValues[regionCount] = value;
+		regionCount++;
+		regionTotal += value;
+		return automaton.accept(candidates, value, occurrence);
+	}
+
+	/**
+	 * @return the number of regions in the current candidate with the given value.
+	 */
+	protected int getValueCount(int value)
+	{
+		return valueCounts[value];
+	}
+
+	/**
+	 * Override this method to change the sorted order of the code.
+	 */
+	protected void sortCode(Marker marker)
+	{
+		Collections.sort(marker.regions, VALUE_ORDER);
+	}
+
+	/**
+	 * Override this method to change validation method. Regions values and the number of empty
+	 * regions have already been checked as the candidate was collected.
+	 */
+	protected boolean isValidCandidate()
+	{
+		if (regionCount < minRegions)
 		{
 			return false; // Too Short
 		}
-		else if (marker.regions.size() > maxRegions)
+		else if (regionCount > maxRegions)
 		{
 			return false; // Too long
 		}
-
-		int numberOfEmptyRegions = 0;
-		for (MarkerRegion region : marker.regions)
+		else if (!automaton.matches(candidates, regionCount))
 		{
-			//check if leaves are using in accepted range.
-			if (region.value > maxRegionValue)
-			{
-				return false; // value is too Big
-			}
-			else if (region.value == 0 && ++numberOfEmptyRegions > this.maxEmptyRegions)
-			{
-				return false; // too many empty regions
-			}
+			return false; // Not a valid code
 		}
 
-		return hasValidChecksum(marker);
+		return hasValidChecksum();
 	}
 
 	/**
@@ -479,17 +448,8 @@ public class MarkerDetector implements ImageProcessor
 	 * @return true if the number of leaves are divisible by the checksum value
 	 * otherwise false.
 	 */
-	protected boolean hasValidChecksum(Marker marker)
+	protected boolean hasValidChecksum()
 	{
-		if (checksum <= 1)
-		{
-			return true;
-		}
-		int numberOfLeaves = 0;
-		for (MarkerRegion region : marker.regions)
-		{
-			numberOfLeaves += region.value;
-		}
-		return (numberOfLeaves % checksum) == 0;
+		return checksum <= 1 || (regionTotal % checksum) == 0;
 	}
 }
@@ -19,18 +19,15 @@
 
 package uk.ac.horizon.artcodes.detect.marker;
 
-import android.content.Context;
-
-import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import uk.ac.horizon.artcodes.detect.handler.MarkerDetectionHandler;
 import uk.ac.horizon.artcodes.model.Experience;
 import uk.ac.horizon.artcodes.process.ImageProcessor;
 import uk.ac.horizon.artcodes.process.ImageProcessorFactory;
+import uk.ac.horizon.artcodes.process.ProcessorConfig;
 
 public class MarkerEmbeddedChecksumDetector extends MarkerDetector
 {
@@ -41,48 +38,60 @@ public class MarkerEmbeddedChecksumDetector extends MarkerDetector
 			return "detectEmbedded";
 		}
 
-		public ImageProcessor create(Context context, Experience experience, MarkerDetectionHandler handler)
+		public ImageProcessor create(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config)
 		{
-			return new MarkerEmbeddedChecksumDetector(context, experience, handler);
+			return new MarkerEmbeddedChecksumDetector(experience, handler, config);
 		}
 	}
 
-	public MarkerEmbeddedChecksumDetector(Context context, Experience experience, MarkerDetectionHandler handler)
+	public MarkerEmbeddedChecksumDetector(Experience experience, MarkerDetectionHandler handler)
 	{
-		super(context, experience, handler);
+		this(experience, handler, new ProcessorConfig("detectEmbedded"));
 	}
 
-	protected Marker createMarkerForNode(int nodeIndex, List<MatOfPoint> contours, Mat hierarchy)
+	public MarkerEmbeddedChecksumDetector(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config)
 	{
-		List<MarkerRegion> regions = null;
-		MarkerRegion checksumRegion = null;
-		for (int currentNodeIndex = (int) hierarchy.get(0, nodeIndex)[FIRST_NODE]; currentNodeIndex >= 0; currentNodeIndex = (int) hierarchy.get(0, currentNodeIndex)[NEXT_NODE])
+		super(experience, handler, config);
+	}
+
+	// Only values in the range 1-7 can be produced by the weighted sum modulo 7
+	private static final int EMBEDDED_CHECKSUM_MOD = 7;
+
+	private int checksumIndex;
+	private int checksumValue;
+
+	protected Marker createMarkerForNode(int nodeIndex, List<MatOfPoint> contours, int[] nodes)
+	{
+		startCandidate();
+		checksumIndex = -1;
+		checksumValue = 0;
+		for (int currentNodeIndex = nodes[nodeIndex * 4 + FIRST_NODE]; currentNodeIndex >= 0; currentNodeIndex = nodes[currentNodeIndex * 4 + NEXT_NODE])
 		{
-			final MarkerRegion region = createRegionForNode(currentNodeIndex, contours, hierarchy);
-			if (region != null)
+			final int value = getRegionValue(currentNodeIndex, nodes);
+			if (value >= 0)
 			{
-				if (this.ignoreEmptyRegions && region.value==0)
+				if (this.ignoreEmptyRegions && value == 0)
 				{
 					continue;
 				}
-				else if (regions == null)
-				{
-					regions = new ArrayList<>();
-				}
-				else if (regions.size() >= maxRegions)
+				else if (regionCount >= maxRegions)
 				{
 					return null;
 				}
 
-				regions.add(region);
+				if (!acceptRegion(currentNodeIndex, value))
+				{
+					return null; // Can't be part of a valid code
+				}
 			}
-			else if (checksumRegion == null)
+			else if (checksumIndex < 0)
 			{
-				checksumRegion = getChecksumRegionAtNode(currentNodeIndex, hierarchy);
-				if (checksumRegion == null)
+				checksumValue = getChecksumValueAtNode(currentNodeIndex, nodes);
+				if (checksumValue < 1 || checksumValue > EMBEDDED_CHECKSUM_MOD)
 				{
-					return null;
+					return null; // Not a checksum region, or a checksum that can never match
 				}
+				checksumIndex = currentNodeIndex;
 			}
 			else
 			{
@@ -90,85 +99,80 @@ public class MarkerEmbeddedChecksumDetector extends MarkerDetector
 			}
 		}
 
-		if (regions!=null)
+		if (regionCount > 0 && isValidCandidate())
 		{
-			Marker marker = new MarkerWithEmbeddedChecksum(nodeIndex, regions, checksumRegion);
+			MarkerRegion checksumRegion = checksumIndex < 0 ? null : new MarkerRegion(checksumIndex, checksumValue);
+			Marker marker = new MarkerWithEmbeddedChecksum(nodeIndex, createRegions(contours), checksumRegion);
 			sortCode(marker);
-			if (isValidRegionList(marker))
-			{
-				return marker;
-			}
+			return marker;
 		}
 
 		return null;
 	}
 
-	private MarkerRegion getChecksumRegionAtNode(int regionIndex, Mat hierarchy)
+	private int getChecksumValueAtNode(int regionIndex, int[] nodes)
 	{
 		// Find the first dot index:
-		double[] nodes = hierarchy.get(0, regionIndex);
-		int currentDotIndex = (int) nodes[FIRST_NODE];
+		int currentDotIndex = nodes[regionIndex * 4 + FIRST_NODE];
 		if (currentDotIndex < 0)
 		{
-			return null; // There are no dots in this region.
+			return -1; // There are no dots in this region.
 		}
 
 		// Count all the dots and check if they are leaf nodes in the hierarchy:
 		int dotCount = 0;
 		while (currentDotIndex >= 0)
 		{
-			if (isValidHollowDot(currentDotIndex, hierarchy))
+			if (isValidHollowDot(currentDotIndex, nodes))
 			{
 				dotCount++;
 				// Get next dot node:
-				nodes = hierarchy.get(0, currentDotIndex);
-				currentDotIndex = (int) nodes[NEXT_NODE];
+				currentDotIndex = nodes[currentDotIndex * 4 + NEXT_NODE];
 			}
 			else
 			{
-				return null; // Dot is not a leaf in the hierarchy.
+				return -1; // Dot is not a leaf in the hierarchy.
 			}
 		}
 
-		return new MarkerRegion(regionIndex, dotCount);
+		return dotCount;
 	}
 
-	private boolean isValidHollowDot(int nodeIndex, Mat hierarchy)
+	private boolean isValidHollowDot(int nodeIndex, int[] nodes)
 	{
-		double[] nodes = hierarchy.get(0, nodeIndex);
-		return nodes[FIRST_NODE] >= 0 && // has a child node, and
-				hierarchy.get(0, (int) nodes[FIRST_NODE])[NEXT_NODE] < 0 && //the child has no siblings, and
-				isValidDot((int) nodes[FIRST_NODE], hierarchy);// the child is a leaf
+		final int childIndex = nodes[nodeIndex * 4 + FIRST_NODE];
+		return childIndex >= 0 && // has a child node, and
+				nodes[childIndex * 4 + NEXT_NODE] < 0 && //the child has no siblings, and
+				isValidDot(childIndex, nodes);// the child is a leaf
 	}
 
 	@Override
-	protected boolean hasValidChecksum(Marker marker)
+	protected boolean hasValidChecksum()
 	{
-		if (marker instanceof MarkerWithEmbeddedChecksum)
+		if (checksumIndex >= 0)
 		{
-			MarkerWithEmbeddedChecksum markerEc = (MarkerWithEmbeddedChecksum) marker;
-			if (markerEc.checksumRegion != null)
+			// Find weighted sum of code, e.g. 1:1:2:4:4 -> 1*1 + 1*2 + 2*3 + 4*4 + 4*5 = 45
+			// Although do not use weights/values divisible by 7
+			// e.g. transform values 1,2,3,4,5,6,7,8, 9,10,11,12,13,14,15... to
+			//                       1,2,3,4,5,6,8,9,10,11,12,13,15,16,17
+			// The code is sorted by value, so the sum can be taken from the count of each value
+			// without sorting the regions first.
+			int weightedSum = 0;
+			int weight = 1;
+			for (int value = 0; value <= maxRegionValue; ++value)
 			{
-				// Find weighted sum of code, e.g. 1:1:2:4:4 -> 1*1 + 1*2 + 2*3 + 4*4 + 4*5 = 45
-				// Although do not use weights/values divisible by 7
-				// e.g. transform values 1,2,3,4,5,6,7,8, 9,10,11,12,13,14,15... to
-				//                       1,2,3,4,5,6,8,9,10,11,12,13,15,16,17
-				int embeddedChecksumModValue = 7;
-				int weightedSum = 0;
-				int weight = 1;
-				for (int i = 0; i < markerEc.regions.size(); ++i)
+				final int transformedValue = value + (value + value / EMBEDDED_CHECKSUM_MOD) / EMBEDDED_CHECKSUM_MOD;
+				for (int count = getValueCount(value); count > 0; --count)
 				{
-					int value = markerEc.regions.get(i).value;
-					value += (value+value/embeddedChecksumModValue)/embeddedChecksumModValue;
-					if (weight%embeddedChecksumModValue==0)
+					if (weight % EMBEDDED_CHECKSUM_MOD == 0)
 					{
 						++weight;
 					}
-					weightedSum += value * weight++;
+					weightedSum += transformedValue * weight++;
 				}
-				return markerEc.checksumRegion.value == (weightedSum - 1) % 7 + 1;
 			}
+			return checksumValue == (weightedSum - 1) % EMBEDDED_CHECKSUM_MOD + 1;
 		}
-		return super.hasValidChecksum(marker);
+		return super.hasValidChecksum();
 	}
-}
\ No newline at end of file
+}
@@ -22,13 +22,35 @@ import android.graphics.Bitmap;
 
 import uk.ac.horizon.artcodes.detect.marker.Marker;
 
+/**
+ * The image of a detected marker, and where it was in the frame. The image can be drawn when it
+ * is first needed rather than when the marker is detected, by giving an {@link ImageSource}.
+ */
 public class MarkerImage
 {
+    public interface ImageSource
+    {
+        /**
+         * Draw the image. Not called on the detection thread.
+         */
+        Bitmap createImage();
+
+        /**
+         * Free an image from {@link #createImage()} that is no longer shown.
+         */
+        void releaseImage(Bitmap image);
+    }
+
+    public static final int NO_TRACK = -1;
+
     public final String code;
-    public final Bitmap image;
     public final float x, y, width, height;
+    // Identifies the printed marker across frames, so instances of the same code can be told apart
+    public int trackId = NO_TRACK;
     public boolean detectionActive = true;
     public boolean newDetection = true;
+    private ImageSource source;
+    private Bitmap image;
 
     public MarkerImage(String code, Bitmap image, float x, float y, float width, float height)
     {
@@ -39,4 +61,44 @@ public class MarkerImage
         this.width = width;
         this.height = height;
     }
+
+    public MarkerImage(String code, ImageSource source, float x, float y, float width, float height)
+    {
+        this(code, (Bitmap) null, x, y, width, height);
+        this.source = source;
+    }
+
+    /**
+     * @return true if {@link #getImage()} will return without drawing the image.
+     */
+    public synchronized boolean hasImage()
+    {
+        return image != null || source == null;
+    }
+
+    /**
+     * Get the image, drawing it first if it hasn't been. This may be slow, so shouldn't be called
+     * on the UI thread unless {@link #hasImage()}.
+     */
+    public synchronized Bitmap getImage()
+    {
+        if (image == null && source != null)
+        {
+            image = source.createImage();
+        }
+        return image;
+    }
+
+    /**
+     * Free an image drawn by {@link #getImage()} once it is no longer shown. It will be drawn again
+     * if it is needed.
+     */
+    public synchronized void releaseImage()
+    {
+        if (image != null && source != null)
+        {
+            source.releaseImage(image);
+            image = null;
+        }
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.process;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * How a thresholder smooths the image before thresholding, so that camera noise doesn't break up
+ * marker regions. In a pipeline entry, the filter parameter picks the blur and the blur parameter
+ * sets the kernel size, where 0 turns blurring off, e.g. "tile(filter=box,blur=3)".
+ */
+public enum Blur
+{
+	/**
+	 * A gaussian blur over the whole image.
+	 */
+	gaussian,
+	/**
+	 * A box filter. This is computed from running sums, so is cheaper than the gaussian.
+	 */
+	box,
+	/**
+	 * No smoothing, for cameras that are already clean.
+	 */
+	none;
+
+	public static final int DEFAULT_SIZE = 5;
+
+	/**
+	 * Read the blur filter from a thresholder's parameters.
+	 */
+	public static Blur fromConfig(ProcessorConfig config, Blur defaultBlur)
+	{
+		if (getSize(config) == 0)
+		{
+			return none;
+		}
+		return config.getEnum("filter", defaultBlur);
+	}
+
+	/**
+	 * Read the blur kernel size from a thresholder's parameters.
+	 *
+	 * @throws IllegalArgumentException if the size isn't 0 or an odd number up to 31.
+	 */
+	public static Size getKernel(ProcessorConfig config)
+	{
+		final int size = getSize(config);
+		return new Size(size, size);
+	}
+
+	private static int getSize(ProcessorConfig config)
+	{
+		final int size = config.getInt("blur", DEFAULT_SIZE, 0, 31);
+		if (size != 0 && size % 2 == 0)
+		{
+			throw new IllegalArgumentException(config.getName() + " blur must be odd, not " + size);
+		}
+		return size;
+	}
+
+	public void apply(Mat image, Size kernel)
+	{
+		switch (this)
+		{
+			case gaussian:
+				Imgproc.GaussianBlur(image, image, kernel, 0);
+				break;
+			case box:
+				Imgproc.blur(image, image, kernel);
+				break;
+			case none:
+				break;
+		}
+	}
+}
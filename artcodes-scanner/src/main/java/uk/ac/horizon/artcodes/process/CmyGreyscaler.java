@@ -93,4 +93,14 @@ public class CmyGreyscaler implements ImageProcessor
 	{
 	}
 
+	@Override
+	public void reset()
+	{
+	}
+
+	@Override
+	public void close()
+	{
+	}
+
 }
\ No newline at end of file
@@ -124,4 +124,14 @@ public class CmykGreyscaler implements ImageProcessor
 	public void getSettings(List<DetectorSetting> settings)
 	{
 	}
+
+	@Override
+	public void reset()
+	{
+	}
+
+	@Override
+	public void close()
+	{
+	}
 }
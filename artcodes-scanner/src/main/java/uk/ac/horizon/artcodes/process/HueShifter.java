@@ -74,6 +74,21 @@ public class HueShifter implements ImageProcessor
 	{
 	}
 
+	@Override
+	public void reset()
+	{
+	}
+
+	@Override
+	public void close()
+	{
+		if (threeChannelBuffer != null)
+		{
+			threeChannelBuffer.release();
+			threeChannelBuffer = null;
+		}
+	}
+
 	/**
 	 * Shift the hue of an image.
 	 *
@@ -19,14 +19,26 @@
 
 package uk.ac.horizon.artcodes.process;
 
+import java.io.Closeable;
 import java.util.List;
 
 import uk.ac.horizon.artcodes.detect.DetectorSetting;
 import uk.ac.horizon.artcodes.detect.ImageBuffers;
 
-public interface ImageProcessor
+public interface ImageProcessor extends Closeable
 {
 	void process(ImageBuffers images);
 
 	void getSettings(List<DetectorSetting> settings);
+
+	/**
+	 * Return to the state the processor was created in, so that it can be reused.
+	 */
+	void reset();
+
+	/**
+	 * Release any native memory kept between frames. The processor can't be used afterwards.
+	 */
+	@Override
+	void close();
 }
@@ -19,13 +19,16 @@
 
 package uk.ac.horizon.artcodes.process;
 
-import android.content.Context;
-
 import uk.ac.horizon.artcodes.detect.handler.MarkerDetectionHandler;
 import uk.ac.horizon.artcodes.model.Experience;
 
 public interface ImageProcessorFactory
 {
 	String getName();
-	ImageProcessor create(Context context, Experience experience, MarkerDetectionHandler handler);
+
+	/**
+	 * @param config The parameters given with the name in the experience pipeline.
+	 * @throws IllegalArgumentException if a parameter value isn't valid.
+	 */
+	ImageProcessor create(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config);
 }
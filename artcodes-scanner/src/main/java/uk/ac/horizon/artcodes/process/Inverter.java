@@ -38,4 +38,14 @@ public class Inverter implements ImageProcessor
 	public void getSettings(List<DetectorSetting> settings)
 	{
 	}
+
+	@Override
+	public void reset()
+	{
+	}
+
+	@Override
+	public void close()
+	{
+	}
 }
@@ -0,0 +1,207 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.process;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An entry in an experience pipeline, parsed into the processor name and its parameters. Entries
+ * are either a plain name, such as "tile", or a name followed by parameters in brackets, such as
+ * "tile(min=2,max=4,blur=0)". Processors read the parameters they understand when they are
+ * created, and any left unread are reported by {@link #getUnusedKeys()}, so that mistyped
+ * parameters can be logged rather than silently ignored.
+ */
+public class ProcessorConfig
+{
+	private final String name;
+	private final Map<String, String> values;
+	private final Set<String> used = new HashSet<>();
+
+	public ProcessorConfig(String name)
+	{
+		this(name, Collections.<String, String>emptyMap());
+	}
+
+	public ProcessorConfig(String name, Map<String, String> values)
+	{
+		this.name = name;
+		this.values = values;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the entry isn't a name followed by optional key=value
+	 *                                  parameters in brackets.
+	 */
+	public static ProcessorConfig parse(String entry)
+	{
+		final String trimmed = entry.trim();
+		final int open = trimmed.indexOf('(');
+		if (open < 0)
+		{
+			if (trimmed.isEmpty() || trimmed.indexOf(')') >= 0)
+			{
+				throw new IllegalArgumentException("Invalid pipeline entry \"" + entry + "\"");
+			}
+			return new ProcessorConfig(trimmed);
+		}
+
+		final String name = trimmed.substring(0, open).trim();
+		if (name.isEmpty() || !trimmed.endsWith(")"))
+		{
+			throw new IllegalArgumentException("Invalid pipeline entry \"" + entry + "\"");
+		}
+
+		final Map<String, String> values = new LinkedHashMap<>();
+		final String parameters = trimmed.substring(open + 1, trimmed.length() - 1).trim();
+		if (!parameters.isEmpty())
+		{
+			for (String parameter : parameters.split(","))
+			{
+				final int equals = parameter.indexOf('=');
+				if (equals < 0)
+				{
+					throw new IllegalArgumentException("Expected key=value, not \"" + parameter.trim() + "\" in \"" + entry + "\"");
+				}
+				final String key = parameter.substring(0, equals).trim();
+				final String value = parameter.substring(equals + 1).trim();
+				if (key.isEmpty() || value.isEmpty())
+				{
+					throw new IllegalArgumentException("Expected key=value, not \"" + parameter.trim() + "\" in \"" + entry + "\"");
+				}
+				if (values.put(key, value) != null)
+				{
+					throw new IllegalArgumentException("Parameter " + key + " repeated in \"" + entry + "\"");
+				}
+			}
+		}
+
+		return new ProcessorConfig(name, Collections.unmodifiableMap(values));
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public boolean has(String key)
+	{
+		return values.containsKey(key);
+	}
+
+	public String getString(String key, String defaultValue)
+	{
+		used.add(key);
+		final String value = values.get(key);
+		return value != null ? value : defaultValue;
+	}
+
+	public int getInt(String key, int defaultValue)
+	{
+		return getInt(key, defaultValue, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the value isn't a whole number between min and max.
+	 */
+	public int getInt(String key, int defaultValue, int min, int max)
+	{
+		final String value = getString(key, null);
+		if (value == null)
+		{
+			return defaultValue;
+		}
+
+		final int result;
+		try
+		{
+			result = Integer.parseInt(value);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException(name + " " + key + " must be a whole number, not " + value);
+		}
+		if (result < min || result > max)
+		{
+			throw new IllegalArgumentException(name + " " + key + " must be between " + min + " and " + max + ", not " + value);
+		}
+		return result;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the value isn't the name of one of the enum's values.
+	 */
+	public <T extends Enum<T>> T getEnum(String key, T defaultValue)
+	{
+		final String value = getString(key, null);
+		if (value == null)
+		{
+			return defaultValue;
+		}
+
+		try
+		{
+			return Enum.valueOf(defaultValue.getDeclaringClass(), value);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IllegalArgumentException(name + " " + key + " must be one of " + Arrays.toString(defaultValue.getDeclaringClass().getEnumConstants()) + ", not " + value);
+		}
+	}
+
+	/**
+	 * @return The parameters given in the entry that haven't been read by the processor.
+	 */
+	public Set<String> getUnusedKeys()
+	{
+		final Set<String> unused = new LinkedHashSet<>(values.keySet());
+		unused.removeAll(used);
+		return unused;
+	}
+
+	@Override
+	public String toString()
+	{
+		if (values.isEmpty())
+		{
+			return name;
+		}
+
+		final StringBuilder builder = new StringBuilder(name);
+		builder.append('(');
+		boolean first = true;
+		for (Map.Entry<String, String> entry : values.entrySet())
+		{
+			if (!first)
+			{
+				builder.append(',');
+			}
+			builder.append(entry.getKey()).append('=').append(entry.getValue());
+			first = false;
+		}
+		builder.append(')');
+		return builder.toString();
+	}
+}
@@ -19,8 +19,6 @@
 
 package uk.ac.horizon.artcodes.process;
 
-import android.content.Context;
-
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
@@ -40,7 +38,7 @@ public class RGBFilter implements ImageProcessor
 			return "filter:red";
 		}
 
-		public ImageProcessor create(Context context, Experience experience, MarkerDetectionHandler handler)
+		public ImageProcessor create(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config)
 		{
 			return new RGBFilter(Channel.red);
 		}
@@ -53,7 +51,7 @@ public class RGBFilter implements ImageProcessor
 			return "filter:blue";
 		}
 
-		public ImageProcessor create(Context context, Experience experience, MarkerDetectionHandler handler)
+		public ImageProcessor create(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config)
 		{
 			return new RGBFilter(Channel.blue);
 		}
@@ -66,7 +64,7 @@ public class RGBFilter implements ImageProcessor
 			return "filter:green";
 		}
 
-		public ImageProcessor create(Context context, Experience experience, MarkerDetectionHandler handler)
+		public ImageProcessor create(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config)
 		{
 			return new RGBFilter(Channel.green);
 		}
@@ -118,6 +116,16 @@ public class RGBFilter implements ImageProcessor
 		//SettingButtonBinding
 	}
 
+	@Override
+	public void reset()
+	{
+	}
+
+	@Override
+	public void close()
+	{
+	}
+
 	private double getValue(double[] data)
 	{
 		switch (channel)
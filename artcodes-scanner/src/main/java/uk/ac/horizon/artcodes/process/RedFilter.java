@@ -19,8 +19,6 @@
 
 package uk.ac.horizon.artcodes.process;
 
-import android.content.Context;
-
 import org.opencv.core.Size;
 
 import java.util.List;
@@ -39,7 +37,7 @@ public class RedFilter implements ImageProcessor
 			return "filter:red";
 		}
 
-		public ImageProcessor create(Context context, Experience experience, MarkerDetectionHandler handler)
+		public ImageProcessor create(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config)
 		{
 			return new RedFilter();
 		}
@@ -86,4 +84,14 @@ public class RedFilter implements ImageProcessor
 	{
 		//SettingButtonBinding
 	}
+
+	@Override
+	public void reset()
+	{
+	}
+
+	@Override
+	public void close()
+	{
+	}
 }
@@ -19,6 +19,7 @@
 
 package uk.ac.horizon.artcodes.process;
 
+import org.opencv.core.Mat;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
@@ -26,24 +27,83 @@ import java.util.List;
 
 import uk.ac.horizon.artcodes.detect.DetectorSetting;
 import uk.ac.horizon.artcodes.detect.ImageBuffers;
+import uk.ac.horizon.artcodes.detect.handler.MarkerDetectionHandler;
+import uk.ac.horizon.artcodes.model.Experience;
 
 public class ResizeThresholder implements ImageProcessor
 {
+	public static class Factory implements ImageProcessorFactory
+	{
+		public String getName()
+		{
+			return "resize";
+		}
+
+		public ImageProcessor create(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config)
+		{
+			return new ResizeThresholder(config, Blur.gaussian);
+		}
+	}
+
+	private final Blur blur;
+	private final Size kernel;
+	private final Size size;
+	private final int offset;
 	private transient int neighbourhood = 5;
+	private transient Mat resized = null;
+
+	public ResizeThresholder()
+	{
+		this(Blur.gaussian);
+	}
+
+	public ResizeThresholder(Blur blur)
+	{
+		this(new ProcessorConfig("resize"), blur);
+	}
+
+	/**
+	 * @param config Parameters from the pipeline entry: size, the width and height the image is
+	 *               resized to, offset, the constant subtracted from the mean by the adaptive
+	 *               threshold, and the {@link Blur} parameters.
+	 */
+	public ResizeThresholder(ProcessorConfig config, Blur defaultBlur)
+	{
+		this.blur = Blur.fromConfig(config, defaultBlur);
+		this.kernel = Blur.getKernel(config);
+		final int size = config.getInt("size", 540, 64, 4096);
+		this.size = new Size(size, size);
+		this.offset = config.getInt("offset", 2, -255, 255);
+	}
 
 	@Override
 	public void process(ImageBuffers buffers)
 	{
-		Imgproc.resize(buffers.getImage(), buffers.getImage(), new Size(540, 540));
-
-		Imgproc.GaussianBlur(buffers.getImage(), buffers.getImage(), new Size(5, 5), 0);
+		// Resizing the image in place would reallocate it, cutting it off from the camera buffer,
+		// so it's resized into an image kept between frames and used for the rest of the frame
+		if (resized == null)
+		{
+			resized = new Mat();
+		}
+		if (blur == Blur.none)
+		{
+			// Area interpolation averages the pixels dropped by the resize, so the image is
+			// smoothed at the smaller scale without another pass over it
+			Imgproc.resize(buffers.getImage(), resized, size, 0, 0, Imgproc.INTER_AREA);
+		}
+		else
+		{
+			Imgproc.resize(buffers.getImage(), resized, size);
+			blur.apply(resized, kernel);
+		}
+		buffers.replaceImage(resized);
 
 		// TODO if (!detected)
 		//{
 		neighbourhood = (neighbourhood % 50) + 5;
 		//}
 		//Log.i(TAG, "Neighbourhood = " + neighbourhood);
-		Imgproc.adaptiveThreshold(buffers.getImage(), buffers.getImage(), 255, Imgproc.ADAPTIVE_THRESH_MEAN_C, Imgproc.THRESH_BINARY, neighbourhood, 2);
+		Imgproc.adaptiveThreshold(buffers.getImage(), buffers.getImage(), 255, Imgproc.ADAPTIVE_THRESH_MEAN_C, Imgproc.THRESH_BINARY, neighbourhood, offset);
 	}
 
 	@Override
@@ -51,4 +111,20 @@ public class ResizeThresholder implements ImageProcessor
 	{
 
 	}
+
+	@Override
+	public void reset()
+	{
+		neighbourhood = 5;
+	}
+
+	@Override
+	public void close()
+	{
+		if (resized != null)
+		{
+			resized.release();
+			resized = null;
+		}
+	}
 }
@@ -19,8 +19,6 @@
 
 package uk.ac.horizon.artcodes.process;
 
-import android.content.Context;
-
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
@@ -31,7 +29,6 @@ import uk.ac.horizon.artcodes.detect.DetectorSetting;
 import uk.ac.horizon.artcodes.detect.ImageBuffers;
 import uk.ac.horizon.artcodes.detect.handler.MarkerDetectionHandler;
 import uk.ac.horizon.artcodes.model.Experience;
-import uk.ac.horizon.artcodes.scanner.R;
 
 public class TileThresholder implements ImageProcessor
 {
@@ -42,9 +39,9 @@ public class TileThresholder implements ImageProcessor
 			return "tile";
 		}
 
-		public ImageProcessor create(Context context, Experience experience, MarkerDetectionHandler handler)
+		public ImageProcessor create(Experience experience, MarkerDetectionHandler handler, ProcessorConfig config)
 		{
-			return new TileThresholder();
+			return new TileThresholder(config, Blur.gaussian);
 		}
 	}
 
@@ -60,17 +57,45 @@ public class TileThresholder implements ImageProcessor
 		}
 	}
 
-	private transient int tiles = 1;
+	private final Blur blur;
+	private final Size kernel;
+	private final int minTiles;
+	private final int maxTiles;
+	private transient int tiles;
 	private Display display = Display.none;
 
 	public TileThresholder()
 	{
+		this(Blur.gaussian);
+	}
+
+	public TileThresholder(Blur blur)
+	{
+		this(new ProcessorConfig("tile"), blur);
+	}
+
+	/**
+	 * @param config Parameters from the pipeline entry: min and max, the range of tiles per side
+	 *               that the image is split into while nothing is detected, and the
+	 *               {@link Blur} parameters.
+	 */
+	public TileThresholder(ProcessorConfig config, Blur defaultBlur)
+	{
+		this.blur = Blur.fromConfig(config, defaultBlur);
+		this.kernel = Blur.getKernel(config);
+		this.minTiles = config.getInt("min", 1, 1, 20);
+		this.maxTiles = config.getInt("max", 9, 1, 20);
+		if (maxTiles < minTiles)
+		{
+			throw new IllegalArgumentException(config.getName() + " max must be at least min (" + minTiles + "), not " + maxTiles);
+		}
+		this.tiles = minTiles;
 	}
 
 	@Override
 	public void process(ImageBuffers buffers)
 	{
-		Imgproc.GaussianBlur(buffers.getImage(), buffers.getImage(), new Size(5, 5), 0);
+		blur.apply(buffers.getImage(), kernel);
 
 		if (display == Display.greyscale)
 		{
@@ -79,7 +104,7 @@ public class TileThresholder implements ImageProcessor
 
 		if (!buffers.hasDetected())
 		{
-			tiles = (tiles % 9) + 1;
+			tiles = tiles >= maxTiles ? minTiles : tiles + 1;
 		}
 		final int tileHeight = (int) buffers.getImage().size().height / tiles;
 		final int tileWidth = (int) buffers.getImage().size().width / tiles;
@@ -135,34 +160,28 @@ public class TileThresholder implements ImageProcessor
 			}
 
 			@Override
-			public int getIcon()
+			public String getName()
 			{
-				switch (display)
-				{
-					case none:
-						return R.drawable.ic_image_24dp;
-					case greyscale:
-						return R.drawable.ic_gradient_24dp;
-					case threshold:
-						return R.drawable.ic_filter_b_and_w_24dp;
-				}
-				return 0;
+				return "threshold";
 			}
 
 			@Override
-			public int getText()
+			public String getValue()
 			{
-				switch (display)
-				{
-					case none:
-						return R.string.draw_threshold_off;
-					case greyscale:
-						return R.string.draw_threshold_greyscale;
-					case threshold:
-						return R.string.draw_threshold_on;
-				}
-				return 0;
+				return display.name();
 			}
 		});
 	}
+
+	@Override
+	public void reset()
+	{
+		tiles = minTiles;
+		display = Display.none;
+	}
+
+	@Override
+	public void close()
+	{
+	}
 }
@@ -0,0 +1,92 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.scanner;
+
+import android.support.annotation.DrawableRes;
+import android.support.annotation.StringRes;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.ac.horizon.artcodes.detect.DetectorSetting;
+
+/**
+ * Icons and descriptions for each value of the detector settings.
+ */
+final class DetectorSettingResources
+{
+	private static final Map<String, int[]> resources = new HashMap<>();
+
+	static
+	{
+		add("threshold", "none", R.drawable.ic_image_24dp, R.string.draw_threshold_off);
+		add("threshold", "greyscale", R.drawable.ic_gradient_24dp, R.string.draw_threshold_greyscale);
+		add("threshold", "threshold", R.drawable.ic_filter_b_and_w_24dp, R.string.draw_threshold_on);
+
+		add("outline", "none", R.drawable.ic_border_clear_24dp, R.string.draw_marker_off);
+		add("outline", "marker", R.drawable.ic_border_outer_24dp, R.string.draw_marker_outline);
+		add("outline", "regions", R.drawable.ic_border_all_24dp, R.string.draw_marker_regions);
+
+		add("code", "hidden", R.drawable.ic_filter_none_black_24dp, R.string.draw_code_off);
+		add("code", "visible", R.drawable.ic_filter_1_black_24dp, R.string.draw_code);
+
+		add("stats", "hidden", R.drawable.ic_timer_off_24dp, R.string.draw_stats_off);
+		add("stats", "visible", R.drawable.ic_timer_24dp, R.string.draw_stats);
+
+		add("camera", "rear", R.drawable.ic_camera_rear_24dp, R.string.camera_rear);
+		add("camera", "front", R.drawable.ic_camera_front_24dp, R.string.camera_front);
+	}
+
+	private DetectorSettingResources()
+	{
+	}
+
+	private static void add(String name, String value, @DrawableRes int icon, @StringRes int text)
+	{
+		resources.put(name + ":" + value, new int[]{icon, text});
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the setting's value hasn't been given resources, rather
+	 *                                  than failing later with an invalid resource id.
+	 */
+	private static int[] get(DetectorSetting setting)
+	{
+		final String key = setting.getName() + ":" + setting.getValue();
+		final int[] values = resources.get(key);
+		if (values == null)
+		{
+			throw new IllegalArgumentException("No icon or text for detector setting " + key);
+		}
+		return values;
+	}
+
+	@DrawableRes
+	static int getIcon(DetectorSetting setting)
+	{
+		return get(setting)[0];
+	}
+
+	@StringRes
+	static int getText(DetectorSetting setting)
+	{
+		return get(setting)[1];
+	}
+}
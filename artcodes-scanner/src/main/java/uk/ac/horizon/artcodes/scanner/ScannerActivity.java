@@ -52,14 +52,18 @@ import android.widget.TextView;
 import com.google.common.collect.Lists;
 import com.google.gson.Gson;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
+import uk.ac.horizon.artcodes.Feature;
 import uk.ac.horizon.artcodes.animator.TextAnimator;
 import uk.ac.horizon.artcodes.animator.VisibilityAnimator;
 import uk.ac.horizon.artcodes.camera.CameraView;
 import uk.ac.horizon.artcodes.detect.ArtcodeDetector;
 import uk.ac.horizon.artcodes.detect.DetectorCallback;
 import uk.ac.horizon.artcodes.detect.DetectorSetting;
+import uk.ac.horizon.artcodes.detect.frame.FrameRecorder;
 import uk.ac.horizon.artcodes.detect.handler.CodeDetectionHandler;
 import uk.ac.horizon.artcodes.detect.handler.MarkerCodeDetectionHandler;
 import uk.ac.horizon.artcodes.model.Experience;
@@ -67,6 +71,7 @@ import uk.ac.horizon.artcodes.model.Experience;
 public class ScannerActivity extends AppCompatActivity
 {
 	private static final int CAMERA_PERMISSION_REQUEST = 47;
+	private static final int MAX_RECORDED_FRAMES = 300;
 	private LinearLayout settingIcons;
 	protected ProgressBar progressBar;
 	private ArtcodeDetector detector;
@@ -74,6 +79,7 @@ public class ScannerActivity extends AppCompatActivity
 	private VisibilityAnimator menuAnimator;
 	private TextAnimator textAnimator;
 	private CameraView cameraView;
+	private FrameRecorder recorder;
 
 	@SuppressWarnings("UnusedParameters")
 	public void hideMenu(View view)
@@ -181,6 +187,7 @@ public class ScannerActivity extends AppCompatActivity
 		if (experience != null)
 		{
 			Log.i("a", "Start Scanning");
+			final ArtcodeDetector previousDetector = detector;
 			detector = this.getNewDetector(experience);
 			detector.setCallback(new DetectorCallback()
 			{
@@ -235,6 +242,11 @@ public class ScannerActivity extends AppCompatActivity
 				getSupportActionBar().setTitle(experience.getName());
 			}
 			cameraView.setDetector(detector);
+			startRecording();
+			if (previousDetector != null)
+			{
+				previousDetector.close();
+			}
 		}
 		else
 		{
@@ -242,6 +254,58 @@ public class ScannerActivity extends AppCompatActivity
 		}
 	}
 
+	private void startRecording()
+	{
+		if (recorder == null && Feature.get(this, R.bool.feature_record_frames).isEnabled())
+		{
+			File directory = getExternalFilesDir(null);
+			if (directory == null)
+			{
+				directory = getFilesDir();
+			}
+			try
+			{
+				recorder = new FrameRecorder(new File(directory, "frames/" + System.currentTimeMillis()), MAX_RECORDED_FRAMES);
+				cameraView.setRecorder(recorder);
+				Log.i("Scanner", "Recording frames to " + recorder.getDirectory());
+			}
+			catch (IOException e)
+			{
+				Log.w("Scanner", "Recording not started: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	private void stopRecording()
+	{
+		if (recorder != null)
+		{
+			cameraView.setRecorder(null);
+			try
+			{
+				recorder.close();
+				Log.i("Scanner", "Recorded " + recorder.getFrameCount() + " frames, dropped " + recorder.getDroppedCount());
+			}
+			catch (IOException e)
+			{
+				Log.w("Scanner", "Recording failed: " + e.getMessage(), e);
+			}
+			recorder = null;
+		}
+	}
+
+	@Override
+	protected void onDestroy()
+	{
+		super.onDestroy();
+		stopRecording();
+		if (detector != null)
+		{
+			detector.close();
+			detector = null;
+		}
+	}
+
 	private void onCodeDetected(String markerCode)
 	{
 		Log.i("Marker", "MarkerDisplay Detected: " + markerCode);
@@ -311,20 +375,20 @@ public class ScannerActivity extends AppCompatActivity
 			for (final DetectorSetting setting : settingList)
 			{
 				final ImageView button = new ImageView(this);
-				button.setContentDescription(getString(setting.getText()));
+				button.setContentDescription(getString(DetectorSettingResources.getText(setting)));
 				final int[] attrs = new int[]{android.R.attr.selectableItemBackground};
 				final TypedArray ta = obtainStyledAttributes(attrs);
 				final Drawable drawableFromTheme = ta.getDrawable(0);
 				ta.recycle();
 				if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
 				{
-					button.setImageResource(setting.getIcon());
+					button.setImageResource(DetectorSettingResources.getIcon(setting));
 					button.setImageTintList(ColorStateList.valueOf(Color.WHITE));
 					button.setBackground(drawableFromTheme);
 				}
 				else
 				{
-					button.setImageDrawable(getTintedDrawable(setting.getIcon(), Color.WHITE));
+					button.setImageDrawable(getTintedDrawable(DetectorSettingResources.getIcon(setting), Color.WHITE));
 					//noinspection deprecation
 					button.setBackgroundDrawable(drawableFromTheme);
 				}
@@ -337,14 +401,14 @@ public class ScannerActivity extends AppCompatActivity
 						setting.nextValue();
 						if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
 						{
-							button.setImageResource(setting.getIcon());
+							button.setImageResource(DetectorSettingResources.getIcon(setting));
 						}
 						else
 						{
-							button.setImageDrawable(getTintedDrawable(setting.getIcon(), Color.WHITE));
+							button.setImageDrawable(getTintedDrawable(DetectorSettingResources.getIcon(setting), Color.WHITE));
 						}
-						button.setContentDescription(getString(setting.getText()));
-						textAnimator.setText(setting.getText());
+						button.setContentDescription(getString(DetectorSettingResources.getText(setting)));
+						textAnimator.setText(DetectorSettingResources.getText(setting));
 					}
 				});
 				final LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(LinearLayout.LayoutParams.WRAP_CONTENT, LinearLayout.LayoutParams.WRAP_CONTENT, 1);
@@ -41,7 +41,7 @@ public class ExperienceParserTest
 		final Action action = new Action();
 		experience.getActions().add(action);
 
-		final Gson gson = ExperienceParser.createGson(null);
+		final Gson gson = ExperienceParser.createGson(true);
 		final String json1 = gson.toJson(experience);
 		final Experience parsed = gson.fromJson(json1, Experience.class);
 		final String json2 = gson.toJson(parsed);
@@ -68,7 +68,7 @@ public class ExperienceParserTest
 	{
 		Experience experience = TestUtils.loadExperience("test_old");
 		Assert.assertTrue(experience.getName().equals("Test"));
-		final Gson gson = ExperienceParser.createGson(null);
+		final Gson gson = ExperienceParser.createGson(true);
 		System.out.println(gson.toJson(experience));
 
 		//Experience experience = new Experience();
@@ -25,6 +25,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 
+import uk.ac.horizon.artcodes.model.Action;
 import uk.ac.horizon.artcodes.model.Experience;
 
 public class TestUtils
@@ -33,7 +34,19 @@ public class TestUtils
 	{
 		final ClassLoader classLoader = TestUtils.class.getClassLoader();
 		final File file = new File(classLoader.getResource(name + ".json").getFile());
-		final Gson gson = ExperienceParser.createGson(null);
+		final Gson gson = ExperienceParser.createGson(true);
 		return gson.fromJson(new FileReader(file), Experience.class);
 	}
+
+	public static Action addAction(Experience experience, Action.Match match, String... codes)
+	{
+		final Action action = new Action();
+		action.setMatch(match);
+		for (String code : codes)
+		{
+			action.getCodes().add(code);
+		}
+		experience.getActions().add(action);
+		return action;
+	}
 }
@@ -0,0 +1,66 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class DetectorStatsTest
+{
+	@Test
+	public void testTimer()
+	{
+		final DetectorStats.Timer timer = new DetectorStats.Timer("test");
+		for (int index = 1; index <= 100; index++)
+		{
+			timer.record(index * 1000);
+		}
+
+		Assert.assertEquals(100, timer.getCount());
+		Assert.assertEquals(50500, timer.getMean());
+		Assert.assertEquals(100000, timer.getMax());
+		final long median = timer.getPercentile(50);
+		Assert.assertTrue(median >= 50000 && median < 100000);
+		Assert.assertEquals(100000, timer.getPercentile(100));
+
+		timer.reset();
+		Assert.assertEquals(0, timer.getCount());
+		Assert.assertEquals(0, timer.getPercentile(90));
+	}
+
+	@Test
+	public void testStages()
+	{
+		final DetectorStats stats = new DetectorStats(Arrays.asList("tile", "detect"));
+		stats.recordStage(0, 10);
+		stats.recordStage(1, 20);
+		stats.recordStage(2, 30);
+		stats.recordFrame(30);
+		stats.addContoursScanned(5);
+
+		Assert.assertEquals(2, stats.getStageTimers().size());
+		Assert.assertEquals("detect", stats.getStageTimers().get(1).getName());
+		Assert.assertEquals(20, stats.getStageTimers().get(1).getMax());
+		Assert.assertEquals(1, stats.getFrameCount());
+		Assert.assertEquals(5, stats.getContoursScanned());
+	}
+}
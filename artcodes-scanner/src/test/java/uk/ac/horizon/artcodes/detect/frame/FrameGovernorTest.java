@@ -0,0 +1,91 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.frame;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.horizon.artcodes.detect.DetectorStats;
+
+public class FrameGovernorTest
+{
+	// A 30fps camera
+	private static final long FRAME = TimeUnit.SECONDS.toNanos(1) / 30;
+
+	private static int run(FrameGovernor governor, long start, int frames, boolean detected)
+	{
+		int processed = 0;
+		for (int frame = 0; frame < frames; frame++)
+		{
+			final long now = start + frame * FRAME;
+			if (governor.shouldProcess(now))
+			{
+				governor.frameProcessed(detected, now);
+				processed++;
+			}
+		}
+		return processed;
+	}
+
+	@Test
+	public void testIdle()
+	{
+		final FrameGovernor governor = new FrameGovernor(FrameGovernor.UNLIMITED, 5, 1, TimeUnit.SECONDS);
+		final DetectorStats stats = new DetectorStats(Collections.<String>emptyList());
+		governor.setStats(stats);
+
+		// Every frame until the idle delay has passed with nothing detected
+		Assert.assertEquals(30, run(governor, 0, 30, false));
+		Assert.assertEquals(0, stats.getTargetFps(), 0);
+
+		final int processed = run(governor, 30 * FRAME, 60, false);
+		Assert.assertTrue("Processed " + processed, processed >= 9 && processed <= 11);
+		Assert.assertEquals(5, stats.getTargetFps(), 0);
+		Assert.assertEquals(60 - processed, stats.getFramesSkipped());
+	}
+
+	@Test
+	public void testDetectedWakes()
+	{
+		final FrameGovernor governor = new FrameGovernor(FrameGovernor.UNLIMITED, 5, 1, TimeUnit.SECONDS);
+		run(governor, 0, 60, false);
+		Assert.assertEquals(5, governor.getTargetFps(60 * FRAME), 0);
+
+		// The next processed frame has markers, so every frame is processed again
+		run(governor, 60 * FRAME, 6, true);
+		Assert.assertEquals(FrameGovernor.UNLIMITED, governor.getTargetFps(66 * FRAME), 0);
+		Assert.assertEquals(30, run(governor, 66 * FRAME, 30, false));
+	}
+
+	@Test
+	public void testMaxFps()
+	{
+		final FrameGovernor governor = new FrameGovernor();
+		governor.setMaxFps(10);
+		final int processed = run(governor, 0, 90, true);
+		Assert.assertTrue("Processed " + processed, processed >= 29 && processed <= 31);
+
+		governor.setMaxFps(FrameGovernor.UNLIMITED);
+		Assert.assertEquals(30, run(governor, 90 * FRAME, 30, true));
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.frame;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FrameReplayerTest
+{
+	private static final int WIDTH = 4;
+	private static final int HEIGHT = 2;
+
+	@Test
+	public void testRecordAndReplay() throws IOException
+	{
+		final File directory = File.createTempFile("frames", "");
+		Assert.assertTrue(directory.delete());
+
+		final FrameRecorder recorder = new FrameRecorder(directory, 3);
+		for (int index = 0; index < 4; index++)
+		{
+			final byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+			frame[0] = (byte) index;
+			Assert.assertEquals(index < 3, recorder.record(frame, WIDTH, HEIGHT));
+		}
+		Assert.assertEquals(3, recorder.getFrameCount());
+		Assert.assertEquals(0, recorder.getDroppedCount());
+		recorder.close();
+
+		final FileFrameSource source = new FileFrameSource(directory);
+		Assert.assertEquals(WIDTH, source.getWidth());
+		Assert.assertEquals(HEIGHT, source.getHeight());
+
+		final List<Byte> received = new ArrayList<>();
+		final FrameReplayer replayer = new FrameReplayer(source, new FrameConsumer()
+		{
+			@Override
+			public byte[] createBuffer(int imageWidth, int imageHeight)
+			{
+				return new byte[imageWidth * imageHeight];
+			}
+
+			@Override
+			public void setData(byte[] data)
+			{
+				received.add(data[0]);
+			}
+		}, 0);
+		replayer.run();
+		source.close();
+
+		Assert.assertNull(replayer.getError());
+		Assert.assertEquals(3, replayer.getFrameCount());
+		Assert.assertEquals(3, received.size());
+		for (int index = 0; index < 3; index++)
+		{
+			Assert.assertEquals(index, (int) received.get(index));
+		}
+
+		final File[] files = directory.listFiles();
+		Assert.assertNotNull(files);
+		for (File file : files)
+		{
+			Assert.assertTrue(file.delete());
+		}
+		Assert.assertTrue(directory.delete());
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.ac.horizon.artcodes.TestUtils;
+import uk.ac.horizon.artcodes.model.Action;
+import uk.ac.horizon.artcodes.model.Experience;
+
+public class ActionIndexTest
+{
+	@Test
+	public void testGroups()
+	{
+		final Experience experience = new Experience();
+		final Action single = TestUtils.addAction(experience, Action.Match.any, "A", "B");
+		final Action pair = TestUtils.addAction(experience, Action.Match.all, "C", "B");
+		final Action triple = TestUtils.addAction(experience, Action.Match.all, "D", "C", "B");
+		final Action one = TestUtils.addAction(experience, Action.Match.all, "E");
+		final ActionIndex index = ActionIndex.get(experience);
+
+		Assert.assertSame(single, index.getCodeAction("B"));
+		Assert.assertSame(one, index.getCodeAction("E"));
+		Assert.assertNull(index.getCodeAction("C"));
+
+		Assert.assertEquals(2, index.getGroupCount());
+		Assert.assertSame(triple, index.getGroup(0));
+		Assert.assertSame(pair, index.getGroup(1));
+
+		final long[] codes = index.createCodeSet();
+		Assert.assertFalse(index.addToCodeSet(codes, "A"));
+		Assert.assertTrue(index.addToCodeSet(codes, "B"));
+		Assert.assertTrue(index.isInGroup(codes, 0));
+		Assert.assertFalse(index.containsGroup(codes, 1));
+
+		// Codes listed in any order make up the group
+		Assert.assertTrue(index.addToCodeSet(codes, "C"));
+		Assert.assertEquals(2, index.getCodeSetSize(codes));
+		Assert.assertTrue(index.containsGroup(codes, 1));
+		Assert.assertFalse(index.containsGroup(codes, 0));
+
+		index.clearCodeSet(codes);
+		Assert.assertTrue(index.addToCodeSet(codes, "D"));
+		Assert.assertFalse(index.isInGroup(codes, 1));
+	}
+
+	@Test
+	public void testShared()
+	{
+		final Experience experience = new Experience();
+		TestUtils.addAction(experience, Action.Match.all, "A", "B");
+		final ActionIndex index = ActionIndex.get(experience);
+		Assert.assertSame(index, ActionIndex.get(experience));
+
+		TestUtils.addAction(experience, Action.Match.all, "A", "B", "C");
+		final ActionIndex changed = ActionIndex.get(experience);
+		Assert.assertNotSame(index, changed);
+		Assert.assertEquals(2, changed.getGroupCount());
+	}
+}
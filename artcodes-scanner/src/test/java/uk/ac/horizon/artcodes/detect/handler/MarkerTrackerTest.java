@@ -0,0 +1,165 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opencv.core.Rect;
+
+public class MarkerTrackerTest
+{
+	/**
+	 * Bounds by marker index, counting how many times they're worked out.
+	 */
+	private static class Bounds implements MarkerTracker.BoundsSource
+	{
+		private final Rect[] bounds;
+		private int calls = 0;
+
+		private Bounds(Rect... bounds)
+		{
+			this.bounds = bounds;
+		}
+
+		@Override
+		public void getBounds(int markerIndex, Rect result)
+		{
+			calls++;
+			result.x = bounds[markerIndex].x;
+			result.y = bounds[markerIndex].y;
+			result.width = bounds[markerIndex].width;
+			result.height = bounds[markerIndex].height;
+		}
+	}
+
+	private static void frame(MarkerTracker tracker, Bounds bounds, String... codes)
+	{
+		tracker.startFrame();
+		for (int index = 0; index < codes.length; index++)
+		{
+			tracker.add(codes[index], index);
+		}
+		tracker.endFrame(bounds);
+	}
+
+	@Test
+	public void testSingleMarkerNeedsNoBounds()
+	{
+		final MarkerTracker tracker = new MarkerTracker(0.3, 2);
+		final Bounds bounds = new Bounds(new Rect(0, 0, 100, 100));
+
+		frame(tracker, bounds, "1:1:2");
+		final int id = tracker.getTrack(0).getId();
+		Assert.assertTrue(tracker.getTrack(0).isNew());
+		Assert.assertEquals(1, bounds.calls);
+
+		for (int index = 0; index < 5; index++)
+		{
+			frame(tracker, bounds, "1:1:2");
+			Assert.assertEquals(id, tracker.getTrack(0).getId());
+			Assert.assertFalse(tracker.getTrack(0).isNew());
+		}
+		Assert.assertEquals(1, bounds.calls);
+
+		// Worked out once when asked for
+		final Rect rect = tracker.getBounds(tracker.getTrack(0));
+		Assert.assertEquals(100, rect.width);
+		tracker.getBounds(tracker.getTrack(0));
+		Assert.assertEquals(2, bounds.calls);
+	}
+
+	@Test
+	public void testSameCodeKeepsSeparateTracks()
+	{
+		final MarkerTracker tracker = new MarkerTracker(0.3, 2);
+
+		frame(tracker, new Bounds(new Rect(0, 0, 100, 100), new Rect(400, 0, 100, 100)), "1:1:2", "1:1:2");
+		final int left = tracker.getTrack(0).getId();
+		final int right = tracker.getTrack(1).getId();
+		Assert.assertNotEquals(left, right);
+
+		// Both move a little, and are listed in the other order
+		frame(tracker, new Bounds(new Rect(410, 5, 100, 100), new Rect(10, 5, 100, 100)), "1:1:2", "1:1:2");
+		Assert.assertEquals(right, tracker.getTrack(0).getId());
+		Assert.assertEquals(left, tracker.getTrack(1).getId());
+		Assert.assertEquals(2, tracker.getTracks().size());
+
+		// Moved too far to overlap much, but still near
+		frame(tracker, new Bounds(new Rect(480, 5, 100, 100), new Rect(10, 5, 100, 100)), "1:1:2", "1:1:2");
+		Assert.assertEquals(right, tracker.getTrack(0).getId());
+		Assert.assertEquals(left, tracker.getTrack(1).getId());
+
+		// Too far from either starts a new track
+		frame(tracker, new Bounds(new Rect(480, 5, 100, 100), new Rect(10, 5, 100, 100), new Rect(200, 400, 100, 100)), "1:1:2", "1:1:2", "1:1:2");
+		Assert.assertTrue(tracker.getTrack(2).isNew());
+		Assert.assertEquals(3, tracker.getTracks().size());
+	}
+
+	@Test
+	public void testSecondMarkerAppears()
+	{
+		final MarkerTracker tracker = new MarkerTracker(0.3, 2);
+
+		frame(tracker, new Bounds(new Rect(0, 0, 100, 100)), "1:1:2");
+		final int id = tracker.getTrack(0).getId();
+
+		// Moves without its bounds being worked out
+		frame(tracker, new Bounds(new Rect(150, 0, 100, 100)), "1:1:2");
+		frame(tracker, new Bounds(new Rect(300, 0, 100, 100)), "1:1:2");
+
+		// A second marker with the same code is further from where the first was last measured
+		frame(tracker, new Bounds(new Rect(600, 0, 100, 100), new Rect(310, 0, 100, 100)), "1:1:2", "1:1:2");
+		Assert.assertEquals(id, tracker.getTrack(1).getId());
+		Assert.assertTrue(tracker.getTrack(0).isNew());
+
+		// A different code never matches
+		frame(tracker, new Bounds(new Rect(310, 0, 100, 100)), "1:1:3");
+		Assert.assertTrue(tracker.getTrack(0).isNew());
+	}
+
+	@Test
+	public void testTracksEnd()
+	{
+		final MarkerTracker tracker = new MarkerTracker(0.3, 2);
+		final Bounds bounds = new Bounds(new Rect(0, 0, 100, 100));
+
+		frame(tracker, bounds, "1:1:2");
+		final int id = tracker.getTrack(0).getId();
+
+		// Missed for two frames, then seen again
+		for (int frame = 0; frame < 2; frame++)
+		{
+			frame(tracker, bounds);
+			Assert.assertNull(tracker.getTrack(0));
+			Assert.assertTrue(tracker.getEndedTracks().isEmpty());
+		}
+		frame(tracker, bounds, "1:1:2");
+		Assert.assertEquals(id, tracker.getTrack(0).getId());
+
+		// Missed for three frames ends the track
+		for (int frame = 0; frame < 3; frame++)
+		{
+			frame(tracker, bounds);
+		}
+		Assert.assertEquals(1, tracker.getEndedTracks().size());
+		Assert.assertEquals(id, tracker.getEndedTracks().get(0).getId());
+		Assert.assertTrue(tracker.getTracks().isEmpty());
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.ac.horizon.artcodes.detect.marker.Marker;
+
+public class MarkerVotesTest
+{
+	@Test
+	public void testPackCode()
+	{
+		Assert.assertNotEquals(Marker.UNPACKED, Marker.packCode("1:1:2:4"));
+		Assert.assertNotEquals(Marker.packCode("1:1:2:4"), Marker.packCode("1:1:2:4:0"));
+		Assert.assertNotEquals(Marker.packCode("1:12"), Marker.packCode("11:2"));
+		Assert.assertEquals(Marker.packCode("30:0"), Marker.packCode("30:0"));
+
+		Assert.assertEquals(Marker.UNPACKED, Marker.packCode(""));
+		Assert.assertEquals(Marker.UNPACKED, Marker.packCode("1::2"));
+		Assert.assertEquals(Marker.UNPACKED, Marker.packCode("1:01"));
+		Assert.assertEquals(Marker.UNPACKED, Marker.packCode("1:31"));
+		Assert.assertEquals(Marker.UNPACKED, Marker.packCode("1:a"));
+		Assert.assertEquals(Marker.UNPACKED, Marker.packCode("1:1:1:1:1:1:1:1:1:1:1:1:1"));
+	}
+
+	@Test
+	public void testVotes()
+	{
+		final MarkerVotes votes = new MarkerVotes();
+		for (int frame = 0; frame < 5; frame++)
+		{
+			votes.startFrame();
+			votes.vote("1:1:2:4", 2, 8);
+			votes.vote("1:1:1:1:1:1:1:1:1:1:1:1:1", 2, 8);
+			if (frame == 4)
+			{
+				votes.vote("1:1:3:3", 2, 8);
+			}
+			votes.endFrame();
+		}
+
+		// Capped at 8 before the last frame's votes were added
+		Assert.assertEquals(10, votes.count("1:1:2:4"));
+		Assert.assertEquals(10, votes.count("1:1:1:1:1:1:1:1:1:1:1:1:1"));
+		Assert.assertEquals(2, votes.count("1:1:3:3"));
+		Assert.assertEquals(3, votes.size());
+
+		// Missed codes lose one vote a frame
+		votes.startFrame();
+		votes.vote("1:1:3:3", 2, 8);
+		votes.endFrame();
+		Assert.assertEquals(9, votes.count("1:1:2:4"));
+		Assert.assertEquals(9, votes.count("1:1:1:1:1:1:1:1:1:1:1:1:1"));
+		Assert.assertEquals(4, votes.count("1:1:3:3"));
+		Assert.assertEquals(3, votes.size());
+
+		// And are removed once they have none left
+		for (int frame = 0; frame < 9; frame++)
+		{
+			votes.startFrame();
+			votes.vote("1:1:3:3", 2, 8);
+			votes.endFrame();
+		}
+		Assert.assertEquals(0, votes.count("1:1:2:4"));
+		Assert.assertEquals(0, votes.count("1:1:1:1:1:1:1:1:1:1:1:1:1"));
+		Assert.assertEquals(10, votes.count("1:1:3:3"));
+		Assert.assertEquals(1, votes.size());
+		Assert.assertEquals("1:1:3:3", votes.getCode(0));
+	}
+
+	@Test
+	public void testChanges()
+	{
+		final MarkerVotes votes = new MarkerVotes();
+		votes.startFrame();
+		votes.vote("1:1:2:4", 2, 4);
+		votes.endFrame();
+		Assert.assertTrue(votes.hasChanged());
+		Assert.assertTrue(votes.hasCodesChanged());
+		Assert.assertTrue(votes.hasAppeared(0));
+
+		votes.startFrame();
+		votes.vote("1:1:2:4", 2, 4);
+		votes.vote("1:1:3:3", 2, 4);
+		votes.endFrame();
+		Assert.assertTrue(votes.hasCodesChanged());
+		Assert.assertFalse(votes.hasAppeared(0));
+		Assert.assertTrue(votes.hasAppeared(1));
+
+		// Still counting up
+		votes.startFrame();
+		votes.vote("1:1:2:4", 2, 4);
+		votes.vote("1:1:3:3", 2, 4);
+		votes.endFrame();
+		Assert.assertTrue(votes.hasChanged());
+		Assert.assertFalse(votes.hasCodesChanged());
+
+		// Capped, so nothing changes
+		votes.startFrame();
+		votes.vote("1:1:2:4", 2, 4);
+		votes.vote("1:1:3:3", 2, 4);
+		votes.endFrame();
+		votes.startFrame();
+		votes.vote("1:1:2:4", 2, 4);
+		votes.vote("1:1:3:3", 2, 4);
+		votes.endFrame();
+		Assert.assertFalse(votes.hasChanged());
+		Assert.assertEquals(0, votes.getDisappearedCount());
+
+		votes.startFrame();
+		votes.vote("1:1:3:3", 2, 4);
+		votes.endFrame();
+		Assert.assertTrue(votes.hasChanged());
+		Assert.assertTrue(votes.hasCodesChanged());
+		Assert.assertEquals(1, votes.getDisappearedCount());
+		Assert.assertEquals("1:1:2:4", votes.getDisappearedCode(0));
+		Assert.assertEquals(5, votes.count("1:1:2:4"));
+		Assert.assertFalse(votes.hasAppeared(0));
+
+		// Seen again while it still has votes
+		votes.startFrame();
+		votes.vote("1:1:2:4", 2, 4);
+		votes.vote("1:1:3:3", 2, 4);
+		votes.endFrame();
+		Assert.assertTrue(votes.hasCodesChanged());
+		Assert.assertTrue(votes.hasAppeared(0));
+		Assert.assertEquals(0, votes.getDisappearedCount());
+	}
+
+	@Test
+	public void testGrow()
+	{
+		final MarkerVotes votes = new MarkerVotes();
+		votes.startFrame();
+		for (int value = 0; value < 30; value++)
+		{
+			votes.vote("1:" + value, 1, 10);
+		}
+		votes.endFrame();
+		Assert.assertEquals(30, votes.size());
+		Assert.assertEquals(1, votes.count("1:29"));
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RingBufferTest
+{
+	@Test
+	public void testAddAndKeepLast()
+	{
+		final RingBuffer<String> buffer = new RingBuffer<>(3);
+		Assert.assertTrue(buffer.isEmpty());
+		Assert.assertNull(buffer.getLast());
+
+		buffer.add("A");
+		buffer.add("B");
+		buffer.add("C");
+		Assert.assertEquals(3, buffer.size());
+		Assert.assertEquals("A", buffer.get(0));
+
+		// Full, so the oldest is dropped
+		buffer.add("D");
+		Assert.assertEquals(3, buffer.size());
+		Assert.assertEquals("B", buffer.get(0));
+		Assert.assertEquals("D", buffer.getLast());
+
+		buffer.keepLast(1);
+		Assert.assertEquals(1, buffer.size());
+		Assert.assertEquals("D", buffer.get(0));
+
+		buffer.add("E");
+		buffer.add("F");
+		buffer.add("G");
+		Assert.assertEquals("E", buffer.get(0));
+		Assert.assertEquals("G", buffer.get(2));
+
+		buffer.keepLast(0);
+		Assert.assertTrue(buffer.isEmpty());
+		buffer.add("H");
+		Assert.assertEquals("H", buffer.get(0));
+
+		buffer.clear();
+		Assert.assertEquals(0, buffer.size());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetOutOfRange()
+	{
+		final RingBuffer<String> buffer = new RingBuffer<>(2);
+		buffer.add("A");
+		buffer.get(1);
+	}
+}
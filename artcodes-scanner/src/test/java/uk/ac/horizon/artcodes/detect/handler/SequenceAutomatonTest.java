@@ -0,0 +1,95 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import uk.ac.horizon.artcodes.TestUtils;
+import uk.ac.horizon.artcodes.model.Action;
+import uk.ac.horizon.artcodes.model.Experience;
+
+public class SequenceAutomatonTest
+{
+	@Test
+	public void testMatch()
+	{
+		final Experience experience = new Experience();
+		final Action abc = TestUtils.addAction(experience, Action.Match.sequence, "A", "B", "C");
+		final Action bc = TestUtils.addAction(experience, Action.Match.sequence, "B", "C");
+		TestUtils.addAction(experience, Action.Match.sequence, "D");
+		TestUtils.addAction(experience, Action.Match.all, "C", "D");
+		final SequenceAutomaton automaton = new SequenceAutomaton(experience);
+
+		Assert.assertEquals(1, automaton.next("A"));
+		Assert.assertNull(automaton.getMatch());
+		Assert.assertEquals(2, automaton.next("B"));
+		Assert.assertEquals(3, automaton.next("C"));
+		Assert.assertSame(abc, automaton.getMatch());
+
+		// The end of the history can still complete a shorter sequence
+		automaton.reset();
+		Assert.assertEquals(1, automaton.next("A"));
+		Assert.assertEquals(0, automaton.next("C"));
+		Assert.assertEquals(1, automaton.next("B"));
+		Assert.assertEquals(2, automaton.next("C"));
+		Assert.assertSame(bc, automaton.getMatch());
+
+		// Codes that don't start a sequence are dropped from the history
+		Assert.assertEquals(0, automaton.next("D"));
+		Assert.assertNull(automaton.getMatch());
+		Assert.assertEquals(0, automaton.next("C"));
+		Assert.assertEquals(1, automaton.next("A"));
+		Assert.assertEquals(1, automaton.next("A"));
+		Assert.assertEquals(2, automaton.next("B"));
+	}
+
+	@Test
+	public void testPossibleAction()
+	{
+		final Experience experience = new Experience();
+		final Action abcd = TestUtils.addAction(experience, Action.Match.sequence, "A", "B", "C", "D");
+		final Action bcd = TestUtils.addAction(experience, Action.Match.sequence, "B", "C", "D");
+		final Action ce = TestUtils.addAction(experience, Action.Match.sequence, "C", "E");
+		final SequenceAutomaton automaton = new SequenceAutomaton(experience);
+
+		Assert.assertNull(automaton.getPossibleAction(1));
+		automaton.next("B");
+		Assert.assertSame(bcd, automaton.getPossibleAction(1));
+		Assert.assertNull(automaton.getPossibleAction(4));
+
+		automaton.next("C");
+		Assert.assertSame(bcd, automaton.getPossibleAction(1));
+		// Falls back to a shorter end of the history
+		automaton.reset();
+		automaton.next("D");
+		automaton.next("C");
+		Assert.assertSame(ce, automaton.getPossibleAction(1));
+
+		automaton.reset();
+		automaton.next("A");
+		Assert.assertSame(abcd, automaton.getPossibleAction(4));
+		automaton.next("B");
+		automaton.next("C");
+		automaton.next("D");
+		Assert.assertSame(abcd, automaton.getMatch());
+		Assert.assertNull(automaton.getPossibleAction(1));
+	}
+}
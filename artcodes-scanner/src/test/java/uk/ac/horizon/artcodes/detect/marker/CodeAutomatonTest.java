@@ -0,0 +1,98 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.detect.marker;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import uk.ac.horizon.artcodes.TestUtils;
+import uk.ac.horizon.artcodes.model.Action;
+import uk.ac.horizon.artcodes.model.Experience;
+
+public class CodeAutomatonTest
+{
+	private static boolean matches(CodeAutomaton automaton, int... values)
+	{
+		final long[] candidates = automaton.createCandidates();
+		final int[] counts = new int[automaton.getMaxRegionValue() + 1];
+		automaton.reset(candidates);
+		for (int value : values)
+		{
+			if (value >= counts.length || !automaton.accept(candidates, value, ++counts[value]))
+			{
+				return false;
+			}
+		}
+		return automaton.matches(candidates, values.length);
+	}
+
+	@Test
+	public void testExperienceCodes() throws IOException
+	{
+		final Experience experience = TestUtils.loadExperience("test");
+		final CodeAutomaton automaton = new CodeAutomaton(experience);
+
+		Assert.assertEquals(5, automaton.getMinRegions());
+		Assert.assertEquals(5, automaton.getMaxRegions());
+		Assert.assertEquals(4, automaton.getMaxRegionValue());
+		Assert.assertEquals(6, automaton.getChecksum());
+
+		// Region order doesn't matter
+		Assert.assertTrue(matches(automaton, 1, 1, 3, 3, 4));
+		Assert.assertTrue(matches(automaton, 4, 3, 1, 3, 1));
+		Assert.assertTrue(matches(automaton, 2, 1, 1, 1, 1));
+
+		Assert.assertFalse(matches(automaton, 1, 1, 3, 3));
+		Assert.assertFalse(matches(automaton, 1, 1, 1, 3, 4));
+		Assert.assertFalse(matches(automaton, 1, 1, 2, 3, 4));
+	}
+
+	@Test
+	public void testEarlyRejection()
+	{
+		final Experience experience = new Experience();
+		final Action action = new Action();
+		action.getCodes().add("1:1:2:3:4");
+		action.getCodes().add("1:2:2:2:3");
+		experience.getActions().add(action);
+		final CodeAutomaton automaton = new CodeAutomaton(experience);
+
+		final long[] candidates = automaton.createCandidates();
+		automaton.reset(candidates);
+		Assert.assertTrue(automaton.accept(candidates, 2, 1));
+		Assert.assertTrue(automaton.accept(candidates, 1, 1));
+		Assert.assertTrue(automaton.accept(candidates, 1, 2));
+		// No code has two 1s and two 2s
+		Assert.assertFalse(automaton.accept(candidates, 2, 2));
+	}
+
+	@Test
+	public void testNoCodes()
+	{
+		final CodeAutomaton automaton = new CodeAutomaton(new Experience());
+
+		Assert.assertTrue(automaton.isUnrestricted());
+		Assert.assertEquals(3, automaton.getMinRegions());
+		Assert.assertEquals(20, automaton.getMaxRegions());
+		Assert.assertTrue(matches(automaton, 5, 6, 7));
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.process;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class ProcessorConfigTest
+{
+	@Test
+	public void testPlainName()
+	{
+		final ProcessorConfig config = ProcessorConfig.parse("filter:red");
+		Assert.assertEquals("filter:red", config.getName());
+		Assert.assertEquals(5, config.getInt("blur", 5));
+		Assert.assertEquals(Collections.emptySet(), config.getUnusedKeys());
+	}
+
+	@Test
+	public void testParameters()
+	{
+		final ProcessorConfig config = ProcessorConfig.parse(" tile( min=2, max = 4,blur=0,filter=box) ");
+		Assert.assertEquals("tile", config.getName());
+		Assert.assertEquals(2, config.getInt("min", 1, 1, 20));
+		Assert.assertEquals(4, config.getInt("max", 9, 1, 20));
+		Assert.assertEquals(Blur.none, Blur.fromConfig(config, Blur.gaussian));
+		Assert.assertEquals(Collections.singleton("filter"), config.getUnusedKeys());
+		Assert.assertEquals("tile(min=2,max=4,blur=0,filter=box)", config.toString());
+	}
+
+	@Test
+	public void testEnum()
+	{
+		final ProcessorConfig config = ProcessorConfig.parse("tile(filter=box)");
+		Assert.assertEquals(Blur.box, Blur.fromConfig(config, Blur.gaussian));
+	}
+
+	@Test
+	public void testInvalid()
+	{
+		final String[] entries = {"", "tile(", "tile)", "(min=2)", "tile(min)", "tile(min=)", "tile(min=1,min=2)"};
+		for (String entry : entries)
+		{
+			try
+			{
+				ProcessorConfig.parse(entry);
+				Assert.fail("Parsed " + entry);
+			}
+			catch (IllegalArgumentException e)
+			{
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidValues()
+	{
+		final String[] entries = {"tile(min=two)", "tile(min=0)", "tile(blur=4)", "tile(filter=median)"};
+		for (String entry : entries)
+		{
+			final ProcessorConfig config = ProcessorConfig.parse(entry);
+			try
+			{
+				config.getInt("min", 1, 1, 20);
+				Blur.fromConfig(config, Blur.gaussian);
+				Assert.fail("Accepted " + entry);
+			}
+			catch (IllegalArgumentException e)
+			{
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void testTileRange()
+	{
+		new TileThresholder(ProcessorConfig.parse("tile(min=12,max=20)"), Blur.gaussian);
+		new TileThresholder(ProcessorConfig.parse("tile(min=4,max=4)"), Blur.gaussian);
+		final String[] entries = {"tile(min=12)", "tile(min=5,max=4)", "tile(max=21)"};
+		for (String entry : entries)
+		{
+			try
+			{
+				new TileThresholder(ProcessorConfig.parse(entry), Blur.gaussian);
+				Assert.fail("Accepted " + entry);
+			}
+			catch (IllegalArgumentException e)
+			{
+				// Expected
+			}
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.service;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.ac.horizon.artcodes.ExperienceParser;
+import uk.ac.horizon.artcodes.detect.DetectorStats;
+import uk.ac.horizon.artcodes.model.Experience;
+
+/**
+ * Load test client for a local {@link DetectionServer}. Registers an experience, sends the images
+ * in a directory as detect requests from several threads, then prints the latency seen by the
+ * client and the server's metrics.
+ * <p>
+ * Usage: DetectionClient url experience.json imageDirectory requests concurrency
+ */
+public class DetectionClient
+{
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		if (args.length != 5)
+		{
+			System.err.println("Usage: DetectionClient url experience.json imageDirectory requests concurrency");
+			System.exit(1);
+		}
+
+		final String url = args[0];
+		final String experienceJson = Files.toString(new File(args[1]), Charsets.UTF_8);
+		final Experience experience = ExperienceParser.createGson(true).fromJson(experienceJson, Experience.class);
+		final int requests = Integer.parseInt(args[3]);
+		final int concurrency = Integer.parseInt(args[4]);
+
+		final List<byte[]> images = new ArrayList<>();
+		final File[] files = new File(args[2]).listFiles();
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				final String name = file.getName().toLowerCase(Locale.US);
+				if (name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png"))
+				{
+					images.add(Files.toByteArray(file));
+				}
+			}
+		}
+		if (images.isEmpty())
+		{
+			System.err.println("No images in " + args[2]);
+			System.exit(1);
+		}
+
+		final int status = post(url + "/experience", experienceJson.getBytes("UTF-8"), "application/json", null);
+		if (status != 200)
+		{
+			System.err.println("Registering experience failed: " + status);
+			System.exit(1);
+		}
+
+		final String detectUrl = url + "/detect?experience=" + URLEncoder.encode(experience.getId(), "UTF-8");
+		final DetectorStats.Timer latency = new DetectorStats.Timer("latency");
+		final ConcurrentMap<Integer, AtomicInteger> statuses = new ConcurrentHashMap<>();
+		final AtomicLong next = new AtomicLong();
+		final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		final long start = System.nanoTime();
+		for (int thread = 0; thread < concurrency; thread++)
+		{
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					long request;
+					while ((request = next.getAndIncrement()) < requests)
+					{
+						final long requestStart = System.nanoTime();
+						int responseStatus;
+						try
+						{
+							responseStatus = post(detectUrl, images.get((int) (request % images.size())), "application/octet-stream", null);
+						}
+						catch (IOException e)
+						{
+							responseStatus = -1;
+						}
+						latency.record(System.nanoTime() - requestStart);
+						statuses.putIfAbsent(responseStatus, new AtomicInteger());
+						statuses.get(responseStatus).incrementAndGet();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.HOURS);
+		final double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println(String.format(Locale.US, "%d requests in %.1fs (%.1f/s)", requests, seconds, requests / seconds));
+		System.out.println(latency);
+		for (Map.Entry<Integer, AtomicInteger> entry : statuses.entrySet())
+		{
+			System.out.println("HTTP " + entry.getKey() + ": " + entry.getValue());
+		}
+
+		final StringBuilder metrics = new StringBuilder();
+		get(url + "/metrics", metrics);
+		System.out.println(new Gson().toJson(new Gson().fromJson(metrics.toString(), Map.class)));
+	}
+
+	private static int post(String url, byte[] body, String contentType, StringBuilder response) throws IOException
+	{
+		final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", contentType);
+		connection.setFixedLengthStreamingMode(body.length);
+		final OutputStream output = connection.getOutputStream();
+		try
+		{
+			output.write(body);
+		}
+		finally
+		{
+			output.close();
+		}
+		return readResponse(connection, response);
+	}
+
+	private static int get(String url, StringBuilder response) throws IOException
+	{
+		return readResponse((HttpURLConnection) new URL(url).openConnection(), response);
+	}
+
+	private static int readResponse(HttpURLConnection connection, StringBuilder response) throws IOException
+	{
+		final int status = connection.getResponseCode();
+		final InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		if (input != null)
+		{
+			try
+			{
+				final byte[] bytes = ByteStreams.toByteArray(input);
+				if (response != null)
+				{
+					response.append(new String(bytes, "UTF-8"));
+				}
+			}
+			finally
+			{
+				input.close();
+			}
+		}
+		return status;
+	}
+}
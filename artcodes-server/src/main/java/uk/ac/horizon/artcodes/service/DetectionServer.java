@@ -0,0 +1,343 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.service;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import nu.pattern.OpenCV;
+import uk.ac.horizon.artcodes.ExperienceParser;
+import uk.ac.horizon.artcodes.model.Experience;
+
+/**
+ * HTTP front end for {@link DetectionService}.
+ * <ul>
+ * <li>POST /experience with an experience as JSON registers it, or replaces it if the id is
+ * already registered.</li>
+ * <li>POST /detect?experience=ID with an image as the body returns the codes detected.</li>
+ * <li>GET /metrics returns throughput, queue depth and cache counts.</li>
+ * </ul>
+ */
+public class DetectionServer
+{
+	private static final String USAGE = "Usage: artcodes-server [options]\n"
+			+ "  --port N          Port to listen on (default 8080)\n"
+			+ "  --workers N       Number of images to scan at once (default: number of processors)\n"
+			+ "  --queue N         Number of requests that can wait before more are rejected (default 64)\n"
+			+ "  --batch N         Number of requests for one experience scanned together (default 8)\n"
+			+ "  --cache N         Number of experience detectors to keep (default 32)\n"
+			+ "  --experiences N   Number of registered experiences to keep (default 1024)";
+	private static final long TIMEOUT_SECONDS = 30;
+	private static final long MAX_BODY_BYTES = 16 * 1024 * 1024;
+
+	private static class BodyTooLargeException extends IOException
+	{
+		private BodyTooLargeException()
+		{
+			super("Request body is larger than " + MAX_BODY_BYTES + " bytes");
+		}
+	}
+
+	private final DetectionService service;
+	private final Gson gson = ExperienceParser.createGson(true);
+	private final HttpServer server;
+
+	public DetectionServer(DetectionService service, int port) throws IOException
+	{
+		this.service = service;
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/experience", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				handleExperience(exchange);
+			}
+		});
+		server.createContext("/detect", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				handleDetect(exchange);
+			}
+		});
+		server.createContext("/metrics", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				respond(exchange, 200, DetectionServer.this.service.getMetrics().toMap(DetectionServer.this.service.getCache()));
+			}
+		});
+		// Requests wait for their result, so allow enough to keep the queue full
+		server.setExecutor(Executors.newCachedThreadPool());
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		int port = 8080;
+		int workers = Runtime.getRuntime().availableProcessors();
+		int queue = 64;
+		int batch = 8;
+		int cacheSize = 32;
+		int experiences = 1024;
+		try
+		{
+			for (int index = 0; index < args.length; index++)
+			{
+				final int value = Integer.parseInt(args[index + 1]);
+				switch (args[index++])
+				{
+					case "--port":
+						port = value;
+						break;
+					case "--workers":
+						workers = value;
+						break;
+					case "--queue":
+						queue = value;
+						break;
+					case "--batch":
+						batch = value;
+						break;
+					case "--cache":
+						cacheSize = value;
+						break;
+					case "--experiences":
+						experiences = value;
+						break;
+					default:
+						throw new IllegalArgumentException(args[index - 1]);
+				}
+			}
+		}
+		catch (RuntimeException e)
+		{
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		OpenCV.loadShared();
+
+		final DetectionService service = new DetectionService(new DetectorCache(cacheSize, experiences), workers, queue, batch);
+		new DetectionServer(service, port).start();
+		System.err.println("Listening on port " + port);
+	}
+
+	public void start()
+	{
+		server.start();
+	}
+
+	public void stop() throws InterruptedException
+	{
+		server.stop(0);
+		service.shutdown();
+	}
+
+	private void handleExperience(HttpExchange exchange) throws IOException
+	{
+		if (!exchange.getRequestMethod().equals("POST"))
+		{
+			respond(exchange, 405, error("Use POST"));
+			return;
+		}
+
+		final Experience experience;
+		try
+		{
+			experience = gson.fromJson(new String(readBody(exchange), "UTF-8"), Experience.class);
+		}
+		catch (JsonParseException e)
+		{
+			respond(exchange, 400, error(e.getMessage()));
+			return;
+		}
+		catch (BodyTooLargeException e)
+		{
+			respond(exchange, 413, error(e.getMessage()));
+			return;
+		}
+
+		if (experience == null || experience.getId() == null)
+		{
+			respond(exchange, 400, error("Experience must have an id"));
+			return;
+		}
+
+		service.getCache().put(experience);
+		respond(exchange, 200, Collections.singletonMap("id", experience.getId()));
+	}
+
+	private void handleDetect(HttpExchange exchange) throws IOException
+	{
+		if (!exchange.getRequestMethod().equals("POST"))
+		{
+			respond(exchange, 405, error("Use POST"));
+			return;
+		}
+
+		final String experienceId = getParameter(exchange, "experience");
+		if (experienceId == null)
+		{
+			respond(exchange, 400, error("Missing experience parameter"));
+			return;
+		}
+
+		ListenableFuture<DetectionService.Result> future = null;
+		try
+		{
+			future = service.submit(experienceId, readBody(exchange));
+			respond(exchange, 200, future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		}
+		catch (IllegalArgumentException e)
+		{
+			respond(exchange, 404, error(e.getMessage()));
+		}
+		catch (BodyTooLargeException e)
+		{
+			respond(exchange, 413, error(e.getMessage()));
+		}
+		catch (RejectedExecutionException e)
+		{
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			respond(exchange, 503, error(e.getMessage()));
+		}
+		catch (ExecutionException e)
+		{
+			// Images that can't be decoded are the client's fault, anything else is ours
+			if (e.getCause() instanceof IllegalArgumentException)
+			{
+				respond(exchange, 400, error(String.valueOf(e.getCause().getMessage())));
+			}
+			else
+			{
+				respond(exchange, 500, error(String.valueOf(e.getCause())));
+			}
+		}
+		catch (TimeoutException e)
+		{
+			// Nobody is waiting for the result any more, so don't scan it if it's still queued
+			future.cancel(false);
+			respond(exchange, 504, error("Timed out"));
+		}
+		catch (InterruptedException e)
+		{
+			future.cancel(false);
+			Thread.currentThread().interrupt();
+			respond(exchange, 503, error("Interrupted"));
+		}
+	}
+
+	private static String getParameter(HttpExchange exchange, String name) throws IOException
+	{
+		final String query = exchange.getRequestURI().getRawQuery();
+		if (query != null)
+		{
+			for (String parameter : query.split("&"))
+			{
+				final int equals = parameter.indexOf('=');
+				if (equals > 0 && parameter.substring(0, equals).equals(name))
+				{
+					return URLDecoder.decode(parameter.substring(equals + 1), "UTF-8");
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @throws BodyTooLargeException if the body is larger than {@link #MAX_BODY_BYTES}.
+	 */
+	private static byte[] readBody(HttpExchange exchange) throws IOException
+	{
+		final InputStream input = exchange.getRequestBody();
+		try
+		{
+			final String length = exchange.getRequestHeaders().getFirst("Content-Length");
+			if (length != null)
+			{
+				try
+				{
+					if (Long.parseLong(length.trim()) > MAX_BODY_BYTES)
+					{
+						throw new BodyTooLargeException();
+					}
+				}
+				catch (NumberFormatException e)
+				{
+					// Leave it to the limited read below
+				}
+			}
+
+			// The length may be missing, as with chunked bodies, so read one byte more than
+			// allowed to tell if the body is too large
+			final byte[] body = ByteStreams.toByteArray(ByteStreams.limit(input, MAX_BODY_BYTES + 1));
+			if (body.length > MAX_BODY_BYTES)
+			{
+				throw new BodyTooLargeException();
+			}
+			return body;
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+
+	private static Object error(String message)
+	{
+		return Collections.singletonMap("error", message);
+	}
+
+	private void respond(HttpExchange exchange, int status, Object body) throws IOException
+	{
+		final byte[] bytes = gson.toJson(body).getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		final OutputStream output = exchange.getResponseBody();
+		try
+		{
+			output.write(bytes);
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+}
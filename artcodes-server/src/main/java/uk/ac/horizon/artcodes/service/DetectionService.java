@@ -0,0 +1,318 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.service;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import uk.ac.horizon.artcodes.detect.DetectionPipeline;
+import uk.ac.horizon.artcodes.detect.marker.Marker;
+
+/**
+ * Detects markers in uploaded images on a fixed pool of workers. Requests are queued per
+ * experience, and a worker takes a batch of requests for one experience at a time, so one cached
+ * pipeline and its buffers are reused across the batch. The total number of
+ * queued requests is bounded; requests beyond that are rejected rather than queued.
+ */
+public class DetectionService
+{
+	public static class Result
+	{
+		private final List<String> codes;
+		private final double time;
+		private final int batchSize;
+
+		Result(List<String> codes, double time, int batchSize)
+		{
+			this.codes = codes;
+			this.time = time;
+			this.batchSize = batchSize;
+		}
+
+		public List<String> getCodes()
+		{
+			return codes;
+		}
+
+		/**
+		 * @return The time taken to detect markers, in milliseconds.
+		 */
+		public double getTime()
+		{
+			return time;
+		}
+
+		/**
+		 * @return The number of requests processed in the same batch as this one.
+		 */
+		public int getBatchSize()
+		{
+			return batchSize;
+		}
+	}
+
+	private static class Job
+	{
+		private final byte[] image;
+		private final long queued = System.nanoTime();
+		private final SettableFuture<Result> result = SettableFuture.create();
+
+		private Job(byte[] image)
+		{
+			this.image = image;
+		}
+	}
+
+	private class ExperienceQueue implements Runnable
+	{
+		private final String experienceId;
+		private final Queue<Job> jobs = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		private ExperienceQueue(String experienceId)
+		{
+			this.experienceId = experienceId;
+		}
+
+		private void schedule()
+		{
+			if (scheduled.compareAndSet(false, true))
+			{
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				final List<Job> batch = new ArrayList<>(maxBatchSize);
+				Job job;
+				while (batch.size() < maxBatchSize && (job = jobs.poll()) != null)
+				{
+					metrics.dequeue(System.nanoTime() - job.queued);
+					if (job.result.isCancelled())
+					{
+						metrics.cancelled();
+					}
+					else
+					{
+						batch.add(job);
+					}
+				}
+
+				if (!batch.isEmpty())
+				{
+					metrics.batch();
+					final DetectionPipeline pipeline;
+					try
+					{
+						pipeline = cache.acquire(experienceId);
+					}
+					catch (RuntimeException | Error e)
+					{
+						// The jobs have been taken off the queue, so they must be failed here or
+						// their clients would wait until they time out
+						for (Job batchJob : batch)
+						{
+							metrics.failed();
+							batchJob.result.setException(e);
+						}
+						return;
+					}
+
+					try
+					{
+						for (Job batchJob : batch)
+						{
+							detect(pipeline, batchJob, batch.size());
+						}
+					}
+					finally
+					{
+						if (pipeline != null)
+						{
+							cache.release(pipeline);
+						}
+					}
+				}
+			}
+			finally
+			{
+				scheduled.set(false);
+				if (!jobs.isEmpty())
+				{
+					schedule();
+				}
+				else
+				{
+					// Jobs added after this are still run, as schedule() runs this queue whether or
+					// not it is in the map, so queues for experiences no longer used aren't kept
+					queues.remove(experienceId, this);
+				}
+			}
+		}
+	}
+
+	private final DetectorCache cache;
+	private final ServiceMetrics metrics = new ServiceMetrics();
+	private final ConcurrentMap<String, ExperienceQueue> queues = new ConcurrentHashMap<>();
+	private final ExecutorService executor;
+	private final int maxQueueDepth;
+	private final int maxBatchSize;
+
+	/**
+	 * @param workers       The number of images to process at once.
+	 * @param maxQueueDepth The number of requests that can be waiting before new ones are rejected.
+	 * @param maxBatchSize  The number of requests for the same experience a worker takes at once.
+	 */
+	public DetectionService(DetectorCache cache, int workers, int maxQueueDepth, int maxBatchSize)
+	{
+		this.cache = cache;
+		this.executor = Executors.newFixedThreadPool(workers);
+		this.maxQueueDepth = maxQueueDepth;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public DetectorCache getCache()
+	{
+		return cache;
+	}
+
+	public ServiceMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Queue an encoded image (any format OpenCV can decode) to be scanned.
+	 *
+	 * @throws IllegalArgumentException   if the experience hasn't been registered.
+	 * @throws RejectedExecutionException if the queue is full.
+	 */
+	public ListenableFuture<Result> submit(String experienceId, byte[] image)
+	{
+		if (cache.getExperience(experienceId) == null)
+		{
+			throw new IllegalArgumentException("Unknown experience " + experienceId);
+		}
+		if (!metrics.enqueue(maxQueueDepth))
+		{
+			throw new RejectedExecutionException("Too many requests queued");
+		}
+
+		ExperienceQueue queue = queues.get(experienceId);
+		if (queue == null)
+		{
+			final ExperienceQueue newQueue = new ExperienceQueue(experienceId);
+			queue = queues.putIfAbsent(experienceId, newQueue);
+			if (queue == null)
+			{
+				queue = newQueue;
+			}
+		}
+
+		final Job job = new Job(image);
+		queue.jobs.add(job);
+		queue.schedule();
+		return job.result;
+	}
+
+	public void shutdown() throws InterruptedException
+	{
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		cache.clear();
+	}
+
+	private void detect(DetectionPipeline pipeline, Job job, int batchSize)
+	{
+		if (job.result.isCancelled())
+		{
+			metrics.cancelled();
+			return;
+		}
+
+		MatOfByte encoded = null;
+		Mat image = null;
+		try
+		{
+			if (pipeline == null)
+			{
+				throw new IllegalArgumentException("Experience has been removed");
+			}
+			encoded = new MatOfByte(job.image);
+			image = Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_GRAYSCALE);
+			if (image.empty())
+			{
+				throw new IllegalArgumentException("Could not decode image");
+			}
+
+			// The thresholders adapt from frame to frame, so reset them to scan each image the same
+			// way wherever it is in the batch
+			pipeline.reset();
+			final long start = System.nanoTime();
+			final Set<String> codes = new LinkedHashSet<>();
+			for (Marker marker : pipeline.detect(image))
+			{
+				codes.add(marker.toString());
+			}
+			final long time = System.nanoTime() - start;
+			metrics.completed(time);
+			job.result.set(new Result(new ArrayList<>(codes), time / 1e6, batchSize));
+		}
+		catch (RuntimeException | Error e)
+		{
+			// Every job must be given a result, or its client waits until it times out
+			metrics.failed();
+			job.result.setException(e);
+		}
+		finally
+		{
+			if (encoded != null)
+			{
+				encoded.release();
+			}
+			if (image != null)
+			{
+				image.release();
+			}
+		}
+	}
+}
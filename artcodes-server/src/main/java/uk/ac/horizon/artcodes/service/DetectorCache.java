@@ -0,0 +1,116 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import uk.ac.horizon.artcodes.detect.DetectionPipeline;
+import uk.ac.horizon.artcodes.detect.PipelineCache;
+import uk.ac.horizon.artcodes.model.Experience;
+
+/**
+ * Registered experiences by id, and the pipelines built for them. Pipelines are taken from a
+ * {@link PipelineCache} for each batch, so a re-registered experience with different codes gets
+ * a new pipeline. Only the most recently used experiences are kept, so they must be registered
+ * again once they have been dropped.
+ */
+public class DetectorCache
+{
+	private final Map<String, Experience> experiences;
+	private final PipelineCache pipelines;
+
+	/**
+	 * @param maxPipelines   The number of unused pipelines to keep.
+	 * @param maxExperiences The number of registered experiences to keep.
+	 */
+	public DetectorCache(int maxPipelines, final int maxExperiences)
+	{
+		this.pipelines = new PipelineCache(maxPipelines);
+		this.experiences = new LinkedHashMap<String, Experience>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Experience> eldest)
+			{
+				return size() > maxExperiences;
+			}
+		};
+	}
+
+	/**
+	 * Add or replace an experience.
+	 */
+	public synchronized void put(Experience experience)
+	{
+		experiences.put(experience.getId(), experience);
+	}
+
+	public synchronized Experience getExperience(String id)
+	{
+		return experiences.get(id);
+	}
+
+	public synchronized int getExperienceCount()
+	{
+		return experiences.size();
+	}
+
+	/**
+	 * @return A pipeline for the experience, which must be released once the batch is done, or
+	 * null if the experience isn't registered.
+	 */
+	public DetectionPipeline acquire(String id)
+	{
+		final Experience experience = getExperience(id);
+		if (experience == null)
+		{
+			return null;
+		}
+		return pipelines.acquire(experience, null);
+	}
+
+	public void release(DetectionPipeline pipeline)
+	{
+		pipelines.release(pipeline);
+	}
+
+	/**
+	 * Close the pipelines that aren't in use.
+	 */
+	public void clear()
+	{
+		pipelines.clear();
+	}
+
+	public int getPipelineCount()
+	{
+		return pipelines.getIdleCount() + pipelines.getInUseCount();
+	}
+
+	public long getHits()
+	{
+		return pipelines.getHits();
+	}
+
+	public long getMisses()
+	{
+		return pipelines.getMisses();
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.ac.horizon.artcodes.detect.DetectorStats;
+
+/**
+ * Counters for the detection service, read by the metrics endpoint.
+ */
+public class ServiceMetrics
+{
+	private final long startTime = System.nanoTime();
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicLong accepted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong cancelled = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	private final DetectorStats.Timer waitTimer = new DetectorStats.Timer("wait");
+	private final DetectorStats.Timer detectTimer = new DetectorStats.Timer("detect");
+
+	public int getQueueDepth()
+	{
+		return queueDepth.get();
+	}
+
+	/**
+	 * Count a request into the queue, unless it is already full.
+	 *
+	 * @return false if the queue is full.
+	 */
+	boolean enqueue(int maxQueueDepth)
+	{
+		while (true)
+		{
+			final int depth = queueDepth.get();
+			if (depth >= maxQueueDepth)
+			{
+				rejected.incrementAndGet();
+				return false;
+			}
+			if (queueDepth.compareAndSet(depth, depth + 1))
+			{
+				accepted.incrementAndGet();
+				return true;
+			}
+		}
+	}
+
+	void dequeue(long waitNanos)
+	{
+		queueDepth.decrementAndGet();
+		waitTimer.record(waitNanos);
+	}
+
+	void batch()
+	{
+		batches.incrementAndGet();
+	}
+
+	void completed(long detectNanos)
+	{
+		completed.incrementAndGet();
+		detectTimer.record(detectNanos);
+	}
+
+	void failed()
+	{
+		failed.incrementAndGet();
+	}
+
+	/**
+	 * Count a request that was abandoned, such as when its client timed out, before it was scanned.
+	 */
+	void cancelled()
+	{
+		cancelled.incrementAndGet();
+	}
+
+	public Map<String, Object> toMap(DetectorCache cache)
+	{
+		final double seconds = (System.nanoTime() - startTime) / 1e9;
+		final Map<String, Object> values = new LinkedHashMap<>();
+		values.put("uptime", seconds);
+		values.put("queueDepth", queueDepth.get());
+		values.put("accepted", accepted.get());
+		values.put("rejected", rejected.get());
+		values.put("completed", completed.get());
+		values.put("failed", failed.get());
+		values.put("cancelled", cancelled.get());
+		values.put("throughput", seconds > 0 ? completed.get() / seconds : 0);
+		values.put("batches", batches.get());
+		values.put("meanBatchSize", batches.get() == 0 ? 0 : (double) (completed.get() + failed.get()) / batches.get());
+		values.put("meanWaitMs", TimeUnit.NANOSECONDS.toMicros(waitTimer.getMean()) / 1000.0);
+		values.put("meanDetectMs", TimeUnit.NANOSECONDS.toMicros(detectTimer.getMean()) / 1000.0);
+		values.put("p90DetectMs", TimeUnit.NANOSECONDS.toMicros(detectTimer.getPercentile(90)) / 1000.0);
+		values.put("experiences", cache.getExperienceCount());
+		values.put("cachedDetectors", cache.getPipelineCount());
+		values.put("cacheHits", cache.getHits());
+		values.put("cacheMisses", cache.getMisses());
+		return values;
+	}
+}
@@ -19,25 +19,25 @@
 
 package uk.ac.horizon.artcodes.detect.handler;
 
-import android.graphics.Bitmap;
 import android.util.Log;
 
-import com.google.common.collect.Multiset;
-
-import org.opencv.android.Utils;
-import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Rect;
 import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import uk.ac.horizon.artcodes.detect.handler.ActionDetectionHandler;
 import uk.ac.horizon.artcodes.detect.handler.MarkerCodeDetectionHandler;
+import uk.ac.horizon.artcodes.detect.handler.MarkerVotes;
 import uk.ac.horizon.artcodes.detect.marker.Marker;
 import uk.ac.horizon.artcodes.drawer.MarkerDrawer;
+import uk.ac.horizon.artcodes.drawer.MarkerThumbnail;
 import uk.ac.horizon.artcodes.model.Action;
 import uk.ac.horizon.artcodes.model.Experience;
 import uk.ac.horizon.artcodes.model.MarkerImage;
@@ -52,57 +52,133 @@ public class MarkerActionDetectionHandler extends MarkerCodeDetectionHandler
     private final MarkerDrawer markerDrawer;
     private Action currentAction;
 
+    // The any and all actions, and for each code the index of every action that lists it, once
+    // for each time it is listed. Only the actions of codes that have been seen are scored.
+    private final List<Action> actions = new ArrayList<>();
+    private final Map<String, int[]> codeActions = new HashMap<>();
+    private final int[] codeCounts;
+    private final int[] scores;
+    private final int[] codesMatched;
+    private final boolean[] scored;
+    private final int[] scoredActions;
+    private final MarkerTracker tracker = new MarkerTracker();
+    private final MarkerTracker.ContourBounds contourBounds = new MarkerTracker.ContourBounds();
+
     public MarkerActionDetectionHandler(ActionDetectionHandler markerActionHandler, Experience experience, MarkerDrawer markerDrawer)
     {
         super(null);
         this.markerActionHandler = markerActionHandler;
         this.experience = experience;
         this.markerDrawer = markerDrawer;
+
+        for (Action action : experience.getActions())
+        {
+            if (action.getMatch() == Action.Match.any || action.getMatch() == Action.Match.all)
+            {
+                final int actionIndex = actions.size();
+                actions.add(action);
+                for (String code : action.getCodes())
+                {
+                    final int[] existing = codeActions.get(code);
+                    final int[] indexes = existing == null ? new int[1] : Arrays.copyOf(existing, existing.length + 1);
+                    indexes[indexes.length - 1] = actionIndex;
+                    codeActions.put(code, indexes);
+                }
+            }
+        }
+
+        codeCounts = new int[actions.size()];
+        for (int actionIndex = 0; actionIndex < actions.size(); actionIndex++)
+        {
+            codeCounts[actionIndex] = actions.get(actionIndex).getCodes().size();
+        }
+        scores = new int[actions.size()];
+        codesMatched = new int[actions.size()];
+        scored = new boolean[actions.size()];
+        scoredActions = new int[actions.size()];
     }
 
     @Override
-    public void onMarkersDetected(Collection<Marker> markers, ArrayList<MatOfPoint> contours, Mat hierarchy, Size sourceImageSize)
+    public void onMarkersDetected(Collection<Marker> markers, ArrayList<MatOfPoint> contours, int[] hierarchy, Size sourceImageSize)
     {
-        actOnMarkers(countMarkers(markers), markers, contours, hierarchy, sourceImageSize);
+        final MarkerVotes votes = countMarkers(markers);
+
+        // Markers are tracked every frame, even when the action isn't worked out again. Their
+        // bounds are only worked out when they need telling apart, or for a thumbnail.
+        tracker.startFrame();
+        for (Marker marker : markers)
+        {
+            tracker.add(marker.toString(), marker.markerIndex);
+        }
+        contourBounds.setContours(contours);
+        tracker.endFrame(contourBounds);
+
+        if (votes.hasChanged())
+        {
+            actOnMarkers(votes, markers, contours, hierarchy, sourceImageSize);
+        }
     }
 
-    protected void actOnMarkers(Multiset<String> markers, Collection<Marker> markerObjects, ArrayList<MatOfPoint> contours, Mat hierarchy, Size sourceImageSize)
+    protected void actOnMarkers(MarkerVotes markers, Collection<Marker> markerObjects, ArrayList<MatOfPoint> contours, int[] hierarchy, Size sourceImageSize)
     {
-        int best = 0;
-        Action selected = null;
-        for (Action action : this.experience.getActions())
+        // An any action scores the count of its most seen code. An all action scores twice the
+        // total of its codes' counts, but only once every one of them is seen more than required.
+        int scoredCount = 0;
+        for (int index = 0; index < markers.size(); index++)
         {
-            if (action.getMatch() == Action.Match.any)
+            final int[] actionIndexes = codeActions.get(markers.getCode(index));
+            if (actionIndexes == null)
             {
-                for (String code : action.getCodes())
-                {
-                    int count = markers.count(code);
-                    if (count > best)
-                    {
-                        selected = action;
-                        best = count;
-                    }
-                }
+                continue;
             }
-            else if (action.getMatch() == Action.Match.all)
+
+            final int count = markers.getCount(index);
+            for (int actionIndex : actionIndexes)
             {
-                int min = MAX;
-                int total = 0;
-                for (String code : action.getCodes())
+                if (!scored[actionIndex])
                 {
-                    int count = markers.count(code);
-                    min = Math.min(min, count);
-                    total += (count * 2);
+                    scored[actionIndex] = true;
+                    scoredActions[scoredCount++] = actionIndex;
+                    scores[actionIndex] = 0;
+                    codesMatched[actionIndex] = 0;
                 }
 
-                if (min > REQUIRED && total > best)
+                if (actions.get(actionIndex).getMatch() == Action.Match.any)
                 {
-                    best = total;
-                    selected = action;
+                    scores[actionIndex] = Math.max(scores[actionIndex], count);
+                }
+                else
+                {
+                    scores[actionIndex] += count * 2;
+                    if (count > REQUIRED)
+                    {
+                        codesMatched[actionIndex]++;
+                    }
                 }
             }
         }
 
+        // Ties go to the action listed first in the experience
+        int best = 0;
+        int selectedIndex = Integer.MAX_VALUE;
+        for (int index = 0; index < scoredCount; index++)
+        {
+            final int actionIndex = scoredActions[index];
+            scored[actionIndex] = false;
+            if (actions.get(actionIndex).getMatch() == Action.Match.all && codesMatched[actionIndex] < codeCounts[actionIndex])
+            {
+                continue;
+            }
+
+            final int score = scores[actionIndex];
+            if (score > best || (score == best && score > 0 && actionIndex < selectedIndex))
+            {
+                best = score;
+                selectedIndex = actionIndex;
+            }
+        }
+        final Action selected = selectedIndex == Integer.MAX_VALUE ? null : actions.get(selectedIndex);
+
         if (selected == null || best < REQUIRED)
         {
             if (currentAction != null)
@@ -127,11 +203,11 @@ public class MarkerActionDetectionHandler extends MarkerCodeDetectionHandler
                 }
                 if (markerObject!=null)
                 {
-                    final Rect boundingRect = Imgproc.boundingRect(contours.get(markerObject.markerIndex));
-                    Mat thumbnailMat = this.markerDrawer.drawMarker(markerObject, contours, hierarchy, boundingRect, null);
-                    Bitmap thumbnail = Bitmap.createBitmap(thumbnailMat.width(), thumbnailMat.height(), Bitmap.Config.ARGB_8888);
-                    Utils.matToBitmap(thumbnailMat, thumbnail);
+                    final MarkerTracker.Track track = tracker.getTrack(markerObject.markerIndex);
+                    final Rect boundingRect = tracker.getBounds(track).clone();
+                    MarkerThumbnail thumbnail = new MarkerThumbnail(this.markerDrawer, markerObject, contours, hierarchy, boundingRect);
                     MarkerImage markerImage = new MarkerImage(markerObject.toString(), thumbnail, (float)(boundingRect.tl().x/sourceImageSize.width), (float)(boundingRect.tl().y/sourceImageSize.height), (float)(boundingRect.width/sourceImageSize.width), (float)(boundingRect.height/sourceImageSize.height));
+                    markerImage.trackId = track.getId();
                     markerImages = new ArrayList<>(1);
                     markerImages.add(markerImage);
 
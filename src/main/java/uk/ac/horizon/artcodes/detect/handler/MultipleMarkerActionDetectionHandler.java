@@ -19,30 +19,24 @@
 
 package uk.ac.horizon.artcodes.detect.handler;
 
-import android.graphics.Bitmap;
-import android.util.Log;
-
-import org.opencv.android.Utils;
-import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Rect;
 import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import uk.ac.horizon.artcodes.detect.handler.ActionDetectionHandler;
 import uk.ac.horizon.artcodes.detect.handler.MarkerCodeDetectionHandler;
 import uk.ac.horizon.artcodes.detect.marker.Marker;
 import uk.ac.horizon.artcodes.detect.marker.MarkerWithEmbeddedChecksum;
 import uk.ac.horizon.artcodes.drawer.MarkerDrawer;
+import uk.ac.horizon.artcodes.drawer.MarkerThumbnail;
 import uk.ac.horizon.artcodes.model.Action;
 import uk.ac.horizon.artcodes.model.Experience;
 import uk.ac.horizon.artcodes.model.MarkerImage;
@@ -120,9 +114,15 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
     protected long lastAddedToHistory = 0;
     protected boolean shouldClearHistoryOnReset = true;
 
-    protected List<MarkerDetectionRecord> mDetectionHistory = new ArrayList<>();
-    protected List<String> mCodesDetected = new ArrayList<>();
+    // History only needs to be as long as the longest sequence, or the last code to spot duplicates
+    protected final RingBuffer<MarkerDetectionRecord> mDetectionHistory;
+    protected final SortedSet<String> mCodesDetected = new TreeSet<>();
     protected Map<String, MarkerDetectionRecord> mActiveMarkerRecoreds = new HashMap<>();
+    // Set when a marker becomes active or inactive, or history changes, so actions need working out again
+    protected boolean activeMarkersChanged = true;
+    // Follows each printed marker by position, so its images keep the same track id
+    protected final MarkerTracker tracker = new MarkerTracker();
+    private final MarkerTracker.ContourBounds contourBounds = new MarkerTracker.ContourBounds();
 
     public MultipleMarkerActionDetectionHandler(ActionDetectionHandler markerActionHandler, Experience experience, MarkerDrawer markerDrawer)
     {
@@ -130,24 +130,35 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
         this.markerActionHandler = markerActionHandler;
         this.experience = experience;
         this.markerDrawer = markerDrawer;
+        this.sequenceAutomaton = experience == null ? null : new SequenceAutomaton(experience);
+        this.mDetectionHistory = new RingBuffer<>(Math.max(1, sequenceAutomaton == null ? 0 : sequenceAutomaton.getMaxLength()));
     }
 
     @Override
-    public void onMarkersDetected(Collection<Marker> markers, ArrayList<MatOfPoint> contours, Mat hierarchy, Size sourceImageSize)
+    public void onMarkersDetected(Collection<Marker> markers, ArrayList<MatOfPoint> contours, int[] hierarchy, Size sourceImageSize)
     {
+        // The actions only depend on which markers are active and in view, and the order they were
+        // seen in, so they are only worked out again when a marker appears or disappears from view
+        // or becomes active or inactive.
+        final MarkerVotes votes = countMarkers(markers);
         addMarkers(markers, contours, hierarchy, sourceImageSize);
-        actOnMarkers();
+        if (activeMarkersChanged || votes.hasCodesChanged())
+        {
+            activeMarkersChanged = false;
+            actOnMarkers();
+        }
     }
 
-    private MarkerImage createImageForMarker(Marker marker, ArrayList<MatOfPoint> contours, Mat hierarchy, Size sourceImageSize)
+    private MarkerImage createImageForMarker(Marker marker, MarkerTracker.Track track, ArrayList<MatOfPoint> contours, int[] hierarchy, Size sourceImageSize)
     {
         if (marker != null)
         {
-            final Rect boundingRect = Imgproc.boundingRect(contours.get(marker.markerIndex));
-            final Mat thumbnailMat = this.markerDrawer.drawMarker(marker, contours, hierarchy, boundingRect, null);
-            final Bitmap thumbnail = Bitmap.createBitmap(thumbnailMat.width(), thumbnailMat.height(), Bitmap.Config.ARGB_8888);
-            Utils.matToBitmap(thumbnailMat, thumbnail);
-            return new MarkerImage(marker.toString(), thumbnail, (float) (boundingRect.tl().x / sourceImageSize.width), (float) (boundingRect.tl().y / sourceImageSize.height), (float) (boundingRect.width / sourceImageSize.width), (float) (boundingRect.height / sourceImageSize.height));
+            // Only the marker's contours are copied here, the thumbnail is drawn if it's shown
+            final Rect boundingRect = tracker.getBounds(track).clone();
+            final MarkerThumbnail thumbnail = new MarkerThumbnail(this.markerDrawer, marker, contours, hierarchy, boundingRect);
+            final MarkerImage markerImage = new MarkerImage(marker.toString(), thumbnail, (float) (boundingRect.tl().x / sourceImageSize.width), (float) (boundingRect.tl().y / sourceImageSize.height), (float) (boundingRect.width / sourceImageSize.width), (float) (boundingRect.height / sourceImageSize.height));
+            markerImage.trackId = track.getId();
+            return markerImage;
         }
         return null;
     }
@@ -159,17 +170,32 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
         if (shouldClearHistoryOnReset)
         {
             mDetectionHistory.clear();
+            if (sequenceAutomaton != null)
+            {
+                sequenceAutomaton.reset();
+            }
         }
         existingAction = null;
         existingThumbnails = null;
         existingFutureAction = null;
+        activeMarkersChanged = true;
+        tracker.clear();
         this.markerActionHandler.onMarkerActionDetected(null, null, null);
     }
 
-    public void addMarkers(Collection<Marker> markers, ArrayList<MatOfPoint> contours, Mat hierarchy, Size sourceImageSize)
+    public void addMarkers(Collection<Marker> markers, ArrayList<MatOfPoint> contours, int[] hierarchy, Size sourceImageSize)
     {
         long time = System.currentTimeMillis();
 
+        // Bounds are only worked out for markers that need telling apart, or for their images
+        tracker.startFrame();
+        for (Marker marker : markers)
+        {
+            tracker.add(marker.toString(), marker.markerIndex);
+        }
+        contourBounds.setContours(contours);
+        tracker.endFrame(contourBounds);
+
         // Process markers detected on this frame
         for (Marker marker : markers)
         {
@@ -187,8 +213,9 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
             // add to history (if it has passed the required count on this frame)
             if (markerDetectionRecord.count < REQUIRED && markerDetectionRecord.count + countIncrease >= REQUIRED)
             {
+                activeMarkersChanged = true;
                 // don't add duplicates to history unless enough time has passed
-                if (this.mDetectionHistory.isEmpty() || System.currentTimeMillis() - this.lastAddedToHistory >= 1000 || !code.equals(this.mDetectionHistory.get(this.mDetectionHistory.size() - 1).code))
+                if (this.mDetectionHistory.isEmpty() || System.currentTimeMillis() - this.lastAddedToHistory >= 1000 || !code.equals(this.mDetectionHistory.getLast().code))
                 {
                     if (markerDetectionRecord.markerImage!=null)
                     {
@@ -201,10 +228,11 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
                     }
                     markerDetectionRecord.firstDetected = time;
                     mDetectionHistory.add(markerDetectionRecord);
+                    addToSequence(markerDetectionRecord.code);
                     this.lastAddedToHistory = time;
                     mCodesDetected.add(markerDetectionRecord.code);
                 }
-                markerDetectionRecord.markerImage = createImageForMarker(marker, contours, hierarchy, sourceImageSize);
+                markerDetectionRecord.markerImage = createImageForMarker(marker, tracker.getTrack(marker.markerIndex), contours, hierarchy, sourceImageSize);
                 markerDetectionRecord.markerImage.newDetection = true;
             }
             else if (markerDetectionRecord.markerImage != null)
@@ -225,6 +253,7 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
             {
                 if (markerRecord.count == REQUIRED)
                 {
+                    activeMarkersChanged = true;
                     mCodesDetected.remove(markerRecord.code);
                     if (markerRecord.markerImage != null)
                     {
@@ -244,7 +273,6 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
         {
             mActiveMarkerRecoreds.remove(markerToRemove);
         }
-        Collections.sort(mCodesDetected);
     }
 
     private void actOnMarkers()
@@ -252,7 +280,7 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
         final String standardCode =  getStandardCode();
         final Action action = getActionFor(standardCode);
 
-        final Action sequentialAction = getActionFor(getSequentialCode());
+        final Action sequentialAction = getSequentialAction();
         final Action futureSequentialAction = getPossibleFutureSequentialActionFor(sequentialAction==null?action:sequentialAction, standardCode);
         if (sequentialAction!=null)
         {
@@ -260,7 +288,7 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
             return;
         }
 
-        final Action groupAction = getActionFor(getGroupCode());
+        final Action groupAction = getGroupAction();
         final Action futureGroupAction = getPossibleFutureGroupActionFor(groupAction==null?action:groupAction);
         if (groupAction!=null)
         {
@@ -323,20 +351,13 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
             }
             else if (action.getMatch() == Action.Match.sequence)
             {
-                List<String> historyAsStrings = new ArrayList<>();
-                for (MarkerDetectionRecord record : mDetectionHistory)
+                for (int numberOfCodesInHistory = Math.min(action.getCodes().size(), mDetectionHistory.size()); numberOfCodesInHistory>0; --numberOfCodesInHistory)
                 {
-                    historyAsStrings.add(record.code);
-                }
-
-                for (int numberOfCodesInHistory = Math.min(action.getCodes().size(), historyAsStrings.size()); numberOfCodesInHistory>0; --numberOfCodesInHistory)
-                {
-                    if (firstN(action.getCodes(), numberOfCodesInHistory).equals(lastN(historyAsStrings, numberOfCodesInHistory)))
+                    if (historyEndsWith(action.getCodes(), numberOfCodesInHistory))
                     {
-                        int start = mDetectionHistory.size() - numberOfCodesInHistory;
-                        for (MarkerDetectionRecord record : mDetectionHistory.subList(start<0?0:start, mDetectionHistory.size()))
+                        for (int i=mDetectionHistory.size()-numberOfCodesInHistory; i<mDetectionHistory.size(); ++i)
                         {
-                            result.add(record.markerImage);
+                            result.add(mDetectionHistory.get(i).markerImage);
                         }
                         for (int i=numberOfCodesInHistory; i<action.getCodes().size(); ++i)
                         {
@@ -352,44 +373,67 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
         return null;
     }
 
-    private List<String> firstN(List<String> list, int n)
-    {
-        int start = list.size() - n;
-        return list.subList(0, n>list.size()?list.size():n);
-    }
-    private List<String> lastN(List<String> list, int n)
+    /**
+     * @return true if the first n codes are the last n codes in history.
+     */
+    private boolean historyEndsWith(List<String> codes, int n)
     {
-        int start = list.size() - n;
-        return list.subList(start<0?0:start, list.size());
+        final int start = mDetectionHistory.size() - n;
+        for (int i=0; i<n; ++i)
+        {
+            if (!codes.get(i).equals(mDetectionHistory.get(start + i).code))
+            {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
-     * Search for group codes (or "pattern groups") in the detected codes. This will only return
-     * group codes set in the experience.
+     * Search for group actions (or "pattern groups") in the detected codes. A group is found if
+     * its codes are all in the set of detected codes. The biggest groups are checked first, groups
+     * must include at least 2 markers.
      * @return
      */
-    private String getGroupCode() {
+    private Action getGroupAction() {
         if (experience != null) {
-            // Search for pattern groups
-            // By getting every combination of the currently detected markers and checking if they exist in the experience (biggest groups first, groups must include at least 2 markers)
             if (mCodesDetected != null && mCodesDetected.size() > 1) {
-                List<Set<List<String>>> combinations = new ArrayList<>();
-                combinationsOfStrings(mCodesDetected, mCodesDetected.size(), combinations);
-                for (int i = combinations.size() - 1; i >= 1; --i) {
-                    List<String> mostRecentGroup = null;
-                    String mostRecentGroupStr = null;
-                    for (List<String> code : combinations.get(i)) {
-                        String codeStr = joinStr(code, "+");
-                        if (isValidCode(codeStr) && doMarkerDetectionTimesOverlap(code) && getMostRecentDetectionTime(code, mostRecentGroup)>getMostRecentDetectionTime(mostRecentGroup, code)) {
-                            mostRecentGroup = code;
-                            mostRecentGroupStr = codeStr;
-                        }
+                if (actionIndex == null)
+                {
+                    createDataCache();
+                }
+                if (actionIndex.getGroupCount() == 0)
+                {
+                    return null;
+                }
+
+                actionIndex.clearCodeSet(detectedCodes);
+                for (String code : mCodesDetected)
+                {
+                    actionIndex.addToCodeSet(detectedCodes, code);
+                }
+
+                int mostRecentGroup = -1;
+                List<String> mostRecentGroupCodes = null;
+                for (int group = 0; group < actionIndex.getGroupCount(); group++)
+                {
+                    final List<String> groupCodes = actionIndex.getGroupCodes(group);
+                    if (mostRecentGroupCodes != null && groupCodes.size() < mostRecentGroupCodes.size())
+                    {
+                        break;
                     }
-                    if (mostRecentGroup!=null)
+                    if (groupCodes.size() <= mCodesDetected.size() && actionIndex.containsGroup(detectedCodes, group)
+                            && doMarkerDetectionTimesOverlap(groupCodes)
+                            && getMostRecentDetectionTime(groupCodes, mostRecentGroupCodes) > getMostRecentDetectionTime(mostRecentGroupCodes, groupCodes))
                     {
-                        return mostRecentGroupStr;
+                        mostRecentGroup = group;
+                        mostRecentGroupCodes = groupCodes;
                     }
                 }
+                if (mostRecentGroup != -1)
+                {
+                    return actionIndex.getGroup(mostRecentGroup);
+                }
             }
         }
         return null;
@@ -444,126 +488,29 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
     }
 
     /**
-     * Get all the combinations of objects up to a maximum size for the combination and add it to the result List.
-     * E.g. combinationsOfStrings([1,3,2], 2, []) changes the result array to [([1],[2],[3]),([1,2],[1,3],[2,3])] where () denotes a Set and [] denotes a List.
-     */
-    private static void combinationsOfStrings(List<String> strings, int maxCombinationSize, List<Set<List<String>>> result)
-    {
-
-        if (maxCombinationSize > 0)
-        {
-            if (maxCombinationSize == 1)
-            {
-                Set<List<String>> resultForN = new HashSet<>();
-                for (String code : strings)
-                {
-                    List<String> tmp = new ArrayList<>();
-                    tmp.add(code);
-                    resultForN.add(tmp);
-                }
-                result.add(resultForN);
-            }
-            else if (maxCombinationSize == strings.size())
-            {
-                combinationsOfStrings(strings, maxCombinationSize - 1, result);
-                Set<List<String>> resultForN = new HashSet<>();
-                Collections.sort(strings);
-                resultForN.add(strings);
-                result.add(resultForN);
-            }
-            else
-            {
-                Set<List<String>> resultForN = new HashSet<>();
-                combinationsOfStrings(strings, maxCombinationSize - 1, result);
-                Set<List<String>> base = result.get(result.size() - 1);
-
-                for (String code : strings)
-                {
-                    for (List<String> setMinus1 : base)
-                    {
-                        if (!setMinus1.contains(code))
-                        {
-                            List<String> aResult = new ArrayList<>(setMinus1);
-                            aResult.add(code);
-                            Collections.sort(aResult);
-                            resultForN.add(aResult);
-                        }
-                    }
-                }
-
-
-                result.add(resultForN);
-            }
-        }
-    }
-
-    /**
-     * Search for sequential codes (or "pattern paths") in detection history. This method may
-     * remove items from history that do not match the beginning of any sequential code in the
-     * experience and will only return a code from the experience.
+     * Search for sequential codes (or "pattern paths") at the end of the detection history. This
+     * will only return an action from the experience.
      * @return
      */
-    private String getSequentialCode()
+    private Action getSequentialAction()
     {
-        if (experience != null)
+        if (sequenceAutomaton != null)
         {
-            // Search for sequential actions in history
-            // by creating history sub-lists and checking if any codes in the experience match.
-            // e.g. if history=[A,B,C,D] check sub-lists [A,B,C,D], [B,C,D], [C,D].
-            if (mDetectionHistory != null && mDetectionHistory.size() > 0)
-            {
-                boolean foundPrefix = false;
-                int start = 0;
-
-                List<String> detectionHistoryAsStrings = new ArrayList<>();
-                for (MarkerDetectionRecord record : mDetectionHistory)
-                {
-                    detectionHistoryAsStrings.add(record.code);
-                }
-                while (start < mDetectionHistory.size())
-                {
-                    List<String> subList = detectionHistoryAsStrings.subList(start, detectionHistoryAsStrings.size());
-                    String joinedString = joinStr(subList, ">");
-                    if (subList.size() != 1 && isValidCode(joinedString))
-                    {
-                        // Case 1: The history sublist is a sequential code in the experience.
-                        return joinedString;
-                    }
-                    else if (!foundPrefix && !hasSequentialPrefix(joinedString))
-                    {
-                        // Case 2: No sequential codes in the experience start with the history sublist (as well as previous history sublists).
-                        // So remove the first part of it from history
-                        // This ensures that history never grows longer than the longest code
-                        detectionHistoryAsStrings.remove(0);
-                        mDetectionHistory.remove(0);
-                        start = 0;
-                    }
-                    else
-                    {
-                        // Case 3: Sequential codes in the experience start with the history sublist (or a previous history sublist).
-                        foundPrefix = true;
-                        start++;
-                    }
-                }
-            }
+            return sequenceAutomaton.getMatch();
         }
         return null;
     }
 
-    private static String joinStr(Collection<String> strings, String joiner)
+    /**
+     * Advance the sequence automaton with a code just added to history, and remove the items from
+     * history that do not match the beginning of any sequential code in the experience.
+     */
+    private void addToSequence(String code)
     {
-        StringBuilder sb = new StringBuilder();
-        boolean first = true;
-        for (String string : strings)
+        if (sequenceAutomaton != null)
         {
-            if (!first)
-            {
-                sb.append(joiner);
-            }
-            sb.append(string);
-            first=false;
+            mDetectionHistory.keepLast(sequenceAutomaton.next(code));
         }
-        return sb.toString();
     }
 
     /**
@@ -588,80 +535,34 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
         return result==null ? null : result.code;
     }
 
-    private HashMap<String, Action> validCodes = null;
-    private HashMap<String, Set<Action>> subGroupCodes = null;
-    private HashMap<String, Set<Action>> subSequenceCodes = null;
-
-    private void logDataCache()
-    {
-        Log.i("DATACACHE", "Valid codes = " + joinStr(validCodes.keySet(), ", "));
-
-        List<String> subGroupCodesStrs = new ArrayList<>();
-        for (Map.Entry<String, Set<Action>> entry : subGroupCodes.entrySet())
-        {
-            List<String> actionStrs = new ArrayList<>();
-            for (Action action : entry.getValue())
-            {
-                actionStrs.add(joinStr(action.getCodes(), ","));
-            }
-            subGroupCodesStrs.add(entry.getKey() + ": " + joinStr(actionStrs, " or "));
-        }
-        Log.i("DATACACHE", "Sub-group codes = " + joinStr(subGroupCodesStrs, ", "));
-
-        subGroupCodesStrs = new ArrayList<>();
-        for (Map.Entry<String, Set<Action>> entry : subSequenceCodes.entrySet())
-        {
-            List<String> actionStrs = new ArrayList<>();
-            for (Action action : entry.getValue())
-            {
-                actionStrs.add(joinStr(action.getCodes(), ","));
-            }
-            subGroupCodesStrs.add(entry.getKey() + ": " + joinStr(actionStrs, " or "));
-        }
-        Log.i("DATACACHE", "Sub-sequence codes = " + joinStr(subGroupCodesStrs, ", "));
-    }
+    private ActionIndex actionIndex = null;
+    private final SequenceAutomaton sequenceAutomaton;
+    // The detected codes that are in groups, reused each frame
+    private long[] detectedCodes = null;
 
     private boolean isValidCode(String code)
     {
-        if (validCodes==null)
-        {
-            createDataCache();
-        }
-        return validCodes.containsKey(code);
-    }
-
-    private boolean hasSequentialPrefix(String prefix)
-    {
-        if (subSequenceCodes==null)
-        {
-            createDataCache();
-        }
-        return subSequenceCodes.containsKey(prefix);
+        return getActionFor(code) != null;
     }
 
     private Action getActionFor(String code)
     {
-        if (validCodes==null)
+        if (actionIndex==null)
         {
             createDataCache();
         }
-        return validCodes.get(code);
+        return actionIndex.getCodeAction(code);
     }
 
     private Action getPossibleFutureSequentialActionFor(Action found, String foundUsing)
     {
-        if (subSequenceCodes == null)
-        {
-            createDataCache();
-        }
-
         int minimumSize = 1;
         if (found != null && found.getMatch() != Action.Match.any)
         {
             minimumSize = found.getCodes().size() + 1;
         }
 
-        if (mDetectionHistory.size()==0)
+        if (mDetectionHistory.isEmpty() || sequenceAutomaton == null)
         {
             return found;
         }
@@ -670,7 +571,7 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
         // not provide a possible future sequential action as this will look confusing in the interface
         if (found!=null && found.getMatch()==Action.Match.any && foundUsing!=null)
         {
-            MarkerDetectionRecord last = mDetectionHistory.get(mDetectionHistory.size()-1);
+            MarkerDetectionRecord last = mDetectionHistory.getLast();
             if (!foundUsing.equals(last.code))
             {
                 return found;
@@ -679,30 +580,10 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
 
         if (found == null || found.getMatch() != Action.Match.all)
         {
-            List<String> detectionHistoryAsStrings = new ArrayList<>();
-            for (MarkerDetectionRecord record : mDetectionHistory)
+            final Action longestSequentialAction = sequenceAutomaton.getPossibleAction(minimumSize);
+            if (longestSequentialAction != null)
             {
-                detectionHistoryAsStrings.add(record.code);
-            }
-            for (int i = 0; i < detectionHistoryAsStrings.size(); ++i)
-            {
-                List<String> subHistory = detectionHistoryAsStrings.subList(i, detectionHistoryAsStrings.size());
-                Set<Action> actions = subSequenceCodes.get(joinStr(subHistory, ">"));
-                if (actions != null && !actions.isEmpty())
-                {
-                    Action longestSequentialAction = null;
-                    for (Action action : actions)
-                    {
-                        if (action.getCodes().size() >= minimumSize && (longestSequentialAction == null || longestSequentialAction.getCodes().size() < action.getCodes().size()))
-                        {
-                            longestSequentialAction = action;
-                        }
-                    }
-                    if (longestSequentialAction != null)
-                    {
-                        return longestSequentialAction;
-                    }
-                }
+                return longestSequentialAction;
             }
         }
 
@@ -711,34 +592,28 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
 
     private Action getPossibleFutureGroupActionFor(Action found)
     {
-        if (subGroupCodes == null)
+        if (actionIndex == null)
         {
             createDataCache();
         }
 
-        if (found == null || found.getMatch()!=Action.Match.sequence)
+        if ((found == null || found.getMatch()!=Action.Match.sequence) && !mCodesDetected.isEmpty())
         {
-
-            List<String> detectedInFound = null;
-            if (found!=null)
-            {
-                detectedInFound = intersection(found.getCodes(), mCodesDetected);
-            }
-
-            Set<Action> groupFutureActions = subGroupCodes.get(joinStr(mCodesDetected, "+"));
-            if (groupFutureActions != null && !groupFutureActions.isEmpty())
+            // The biggest group that has every detected code, and more
+            actionIndex.clearCodeSet(detectedCodes);
+            for (String code : mCodesDetected)
             {
-                Action largestGroupAction = null;
-                for (Action action : groupFutureActions)
+                if (!actionIndex.addToCodeSet(detectedCodes, code))
                 {
-                    if ((found==null || action.getCodes().containsAll(detectedInFound)) && (largestGroupAction == null || largestGroupAction.getCodes().size() < action.getCodes().size()))
-                    {
-                        largestGroupAction = action;
-                    }
+                    return found;
                 }
-                if (largestGroupAction!=null)
+            }
+            final int detectedCount = actionIndex.getCodeSetSize(detectedCodes);
+            for (int group = 0; group < actionIndex.getGroupCount(); group++)
+            {
+                if (actionIndex.getGroupCodes(group).size() > detectedCount && actionIndex.isInGroup(detectedCodes, group))
                 {
-                    return largestGroupAction;
+                    return actionIndex.getGroup(group);
                 }
             }
         }
@@ -746,80 +621,12 @@ public class MultipleMarkerActionDetectionHandler extends MarkerCodeDetectionHan
         return found;
     }
 
-    private static List<String> intersection(List<String> list1, List<String> list2)
-    {
-        List<String> intersection = new ArrayList<>();
-        if (list1!=null && list2!=null)
-        {
-            intersection.addAll(list1);
-            intersection.retainAll(list2);
-        }
-        return intersection;
-    }
-
     private void createDataCache()
     {
-        if (validCodes==null)
+        if (actionIndex==null)
         {
-            validCodes = new HashMap<>();
-            subGroupCodes = new HashMap<>();
-            subSequenceCodes = new HashMap<>();
-            for (Action action : experience.getActions())
-            {
-                if (action.getMatch()== Action.Match.any || action.getCodes().size()==1) // single
-                {
-                    for (String code : action.getCodes())
-                    {
-                        validCodes.put(code, action);
-                    }
-                }
-                else if (action.getMatch()== Action.Match.all) // group
-                {
-                    String code = joinStr(action.getCodes(), "+");
-                    validCodes.put(code, action);
-
-                    List<Set<List<String>>> subGroupsByLength = new ArrayList<>();
-                    combinationsOfStrings(action.getCodes(), action.getCodes().size()-1, subGroupsByLength);
-                    for (Set<List<String>> setOfGroups : subGroupsByLength)
-                    {
-                        for (List<String> group : setOfGroups)
-                        {
-                            code = joinStr(group, "+");
-                            Set<Action> actions = subGroupCodes.get(code);
-                            if (actions != null)
-                            {
-                                actions.add(action);
-                            }
-                            else
-                            {
-                                HashSet<Action> actionsForSubGroup = new HashSet<>();
-                                actionsForSubGroup.add(action);
-                                subGroupCodes.put(code, actionsForSubGroup);
-                            }
-                        }
-                    }
-                }
-                else if (action.getMatch()== Action.Match.sequence)
-                {
-                    String code = joinStr(action.getCodes(), ">");
-                    validCodes.put(code, action);
-                    for (int subCodeSize=1; subCodeSize<action.getCodes().size(); ++subCodeSize)
-                    {
-                        code = joinStr(action.getCodes().subList(0, subCodeSize), ">");
-                        Set<Action> actions = subSequenceCodes.get(code);
-                        if (actions != null)
-                        {
-                            actions.add(action);
-                        }
-                        else
-                        {
-                            HashSet<Action> actionsForSubSequence = new HashSet<>();
-                            actionsForSubSequence.add(action);
-                            subSequenceCodes.put(code, actionsForSubSequence);
-                        }
-                    }
-                }
-            }
+            actionIndex = ActionIndex.get(experience);
+            detectedCodes = actionIndex.createCodeSet();
         }
     }
 }
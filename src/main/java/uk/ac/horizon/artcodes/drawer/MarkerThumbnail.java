@@ -0,0 +1,141 @@
+/*
+ * Artcodes recognises a different marker scheme that allows the
+ * creation of aesthetically pleasing, even beautiful, codes.
+ * Copyright (C) 2013-2016  The University of Nottingham
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Affero General Public License as published
+ *     by the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Affero General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Affero General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.horizon.artcodes.drawer;
+
+import android.graphics.Bitmap;
+
+import org.opencv.android.Utils;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.ac.horizon.artcodes.detect.BitmapPool;
+import uk.ac.horizon.artcodes.detect.marker.Marker;
+import uk.ac.horizon.artcodes.model.MarkerImage;
+
+/**
+ * The contours of a detected marker, copied out of the frame so that its thumbnail can be drawn
+ * later, and only if it is shown. Only the marker's contour and the two levels of contours inside
+ * it are kept, as that is all that is drawn. Points are copied into Java arrays, so nothing needs
+ * releasing if the thumbnail is never drawn. Thumbnails are drawn into bitmaps from the shared
+ * {@link BitmapPool}.
+ */
+public class MarkerThumbnail implements MarkerImage.ImageSource
+{
+    private static final int MAX_LEVEL = 2;
+
+    private final MarkerDrawer drawer;
+    private final Marker marker;
+    private final Rect boundingRect;
+    private final int[][] points;
+    private final int[] hierarchy;
+
+    public MarkerThumbnail(MarkerDrawer drawer, Marker marker, List<MatOfPoint> contours, int[] hierarchy, Rect boundingRect)
+    {
+        this.drawer = drawer;
+        this.boundingRect = boundingRect;
+
+        final List<Integer> kept = new ArrayList<>();
+        final List<Integer> parents = new ArrayList<>();
+        collect(hierarchy, marker.markerIndex, -1, 0, kept, parents);
+
+        // The marker is the first contour kept, so index the hierarchy of the kept contours from it
+        this.marker = new Marker(0, marker.regions);
+        this.points = new int[kept.size()][];
+        this.hierarchy = new int[kept.size() * 4];
+        Arrays.fill(this.hierarchy, -1);
+        final int[] lastChild = new int[kept.size()];
+        Arrays.fill(lastChild, -1);
+        for (int index = 0; index < kept.size(); index++)
+        {
+            final MatOfPoint contour = contours.get(kept.get(index));
+            points[index] = new int[(int) contour.total() * 2];
+            contour.get(0, 0, points[index]);
+
+            final int parent = parents.get(index);
+            this.hierarchy[index * 4 + 3] = parent;
+            if (parent >= 0)
+            {
+                if (lastChild[parent] < 0)
+                {
+                    this.hierarchy[parent * 4 + 2] = index;
+                }
+                else
+                {
+                    this.hierarchy[lastChild[parent] * 4] = index;
+                    this.hierarchy[index * 4 + 1] = lastChild[parent];
+                }
+                lastChild[parent] = index;
+            }
+        }
+    }
+
+    private static void collect(int[] hierarchy, int contour, int parent, int level, List<Integer> kept, List<Integer> parents)
+    {
+        final int index = kept.size();
+        kept.add(contour);
+        parents.add(parent);
+        if (level < MAX_LEVEL)
+        {
+            for (int child = hierarchy[contour * 4 + 2]; child >= 0; child = hierarchy[child * 4])
+            {
+                collect(hierarchy, child, index, level + 1, kept, parents);
+            }
+        }
+    }
+
+    @Override
+    public Bitmap createImage()
+    {
+        final ArrayList<MatOfPoint> contours = new ArrayList<>(points.length);
+        for (int[] contourPoints : points)
+        {
+            final MatOfPoint contour = new MatOfPoint();
+            contour.create(contourPoints.length / 2, 1, CvType.CV_32SC2);
+            contour.put(0, 0, contourPoints);
+            contours.add(contour);
+        }
+        final Mat hierarchyMat = new Mat(1, points.length, CvType.CV_32SC4);
+        hierarchyMat.put(0, 0, hierarchy);
+
+        final Mat thumbnailMat = drawer.drawMarker(marker, contours, hierarchyMat, boundingRect, null);
+        final Bitmap thumbnail = BitmapPool.getShared().acquire(thumbnailMat.width(), thumbnailMat.height());
+        Utils.matToBitmap(thumbnailMat, thumbnail);
+
+        thumbnailMat.release();
+        hierarchyMat.release();
+        for (MatOfPoint contour : contours)
+        {
+            contour.release();
+        }
+        return thumbnail;
+    }
+
+    @Override
+    public void releaseImage(Bitmap image)
+    {
+        BitmapPool.getShared().release(image);
+    }
+}
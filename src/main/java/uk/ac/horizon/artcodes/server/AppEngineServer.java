@@ -56,7 +56,7 @@ public class AppEngineServer implements ArtcodeServer
 	public AppEngineServer(Context context)
 	{
 		this.context = context;
-		this.gson = ExperienceParser.createGson(context);
+		this.gson = ExperienceParser.createGson(Feature.get(context, R.bool.feature_load_old_experiences).isEnabled());
 		final List<String> accountIDs = loadIDs(Account.class, accounts_tag);
 
 		localAccount = new LocalAccount(context, gson);
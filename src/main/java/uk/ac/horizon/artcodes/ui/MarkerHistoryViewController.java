@@ -22,6 +22,7 @@ package uk.ac.horizon.artcodes.ui;
 import android.animation.Animator;
 import android.app.Activity;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.os.Handler;
 import android.support.v4.content.ContextCompat;
@@ -36,6 +37,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import uk.ac.horizon.artcodes.R;
 import uk.ac.horizon.artcodes.model.Action;
@@ -54,6 +57,9 @@ public class MarkerHistoryViewController
     private static final int BOTTOM_MARGIN_DP = 5;
     private static final int ANIMATION_DURATION_MS = 300;
 
+    // Draws thumbnails that haven't been drawn yet, off the UI and detection threads
+    private static final ExecutorService thumbnailExecutor = Executors.newSingleThreadExecutor();
+
     private final Context context;
     private final RelativeLayout relativeLayout;
     private Handler uiHandler;
@@ -157,7 +163,7 @@ public class MarkerHistoryViewController
                 for (Map.Entry<MarkerImage, View> entry : toRemove)
                 {
                     final View view = entry.getValue();
-                    animateRemoval(view);
+                    animateRemoval(view, entry.getKey());
                     displayedViews.remove(entry.getKey());
                 }
 
@@ -187,7 +193,7 @@ public class MarkerHistoryViewController
                             {
                                 continue;
                             }
-                            imageView.setImageBitmap(markerImage.image);
+                            showImage(markerImage, imageView);
                         }
 
                         // Note: Translation ignores scale, and scale scales around the centre of the view.
@@ -292,6 +298,36 @@ public class MarkerHistoryViewController
         this.existingAction = currentOrFutureAction;
     }
 
+    private void showImage(final MarkerImage markerImage, final ImageView imageView)
+    {
+        if (markerImage.hasImage())
+        {
+            imageView.setImageBitmap(markerImage.getImage());
+            return;
+        }
+
+        thumbnailExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                final Bitmap image = markerImage.getImage();
+                uiHandler.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        // The marker may have been removed from the history while its thumbnail was drawn
+                        if (displayedViews.containsKey(markerImage))
+                        {
+                            imageView.setImageBitmap(image);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
     private void animateEnterOrMove(View view, int x, int y)
     {
         view.animate()
@@ -318,6 +354,14 @@ public class MarkerHistoryViewController
     }
 
     private void animateRemoval(final View view)
+    {
+        animateRemoval(view, null);
+    }
+
+    /**
+     * @param markerImage If not null, its image is released once removed, unless it's being shown again.
+     */
+    private void animateRemoval(final View view, final MarkerImage markerImage)
     {
         view.animate()
                 .setListener(new Animator.AnimatorListener()
@@ -332,6 +376,15 @@ public class MarkerHistoryViewController
                     public void onAnimationEnd(Animator animator)
                     {
                         relativeLayout.removeView(view);
+                        if (markerImage != null && !displayedViews.containsKey(markerImage))
+                        {
+                            final ImageView imageView = (ImageView) view.findViewById(R.id.marker_thumbnail_image);
+                            if (imageView != null)
+                            {
+                                imageView.setImageBitmap(null);
+                            }
+                            markerImage.releaseImage();
+                        }
                     }
 
                     @Override